@@ -0,0 +1,64 @@
+package com.example.samplestickerapp;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class UserStickerPackStoreTest {
+    private static final int PACK_COUNT = 10_000;
+    //generous for a slow emulator, a quadratic identifier allocation or lookup blows well past it.
+    private static final long CREATE_BUDGET_MS = TimeUnit.MINUTES.toMillis(2);
+    private static final String PACK_NAME = "Store Scale Test";
+
+    private Context context;
+    private final List<String> createdIdentifiers = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (String identifier : createdIdentifiers) {
+            UserStickerPackStore.deletePack(context, identifier);
+        }
+    }
+
+    @Test
+    public void createsTenThousandPacksWithinBudget() throws IOException {
+        final long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < PACK_COUNT; i++) {
+            //the same name every time, so every pack after the first goes through the suffix counter.
+            createdIdentifiers.add(UserStickerPackStore.createPack(context, PACK_NAME, "publisher").identifier);
+        }
+        final long elapsed = SystemClock.elapsedRealtime() - start;
+        assertTrue("creating " + PACK_COUNT + " packs took " + elapsed + "ms", elapsed < CREATE_BUDGET_MS);
+
+        final Set<String> unique = new HashSet<>(createdIdentifiers);
+        assertEquals(PACK_COUNT, unique.size());
+        for (String identifier : createdIdentifiers) {
+            assertTrue(UserStickerPackStore.isCustomPack(context, identifier));
+            assertNotNull(UserStickerPackStore.findPack(context, identifier));
+        }
+    }
+}
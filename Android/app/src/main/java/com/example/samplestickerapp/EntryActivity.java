@@ -39,10 +39,11 @@ public class EntryActivity extends BaseActivity {
         loadListAsyncTask.execute();
     }
 
-    private void showStickerPack(ArrayList<StickerPack> stickerPackList) {
+    private void showStickerPack(ArrayList<StickerPack> stickerPackList, int stickerPackCount) {
         progressBar.setVisibility(View.GONE);
         final Intent intent = new Intent(this, StickerPackListActivity.class);
         intent.putParcelableArrayListExtra(StickerPackListActivity.EXTRA_STICKER_PACK_LIST_DATA, stickerPackList);
+        intent.putExtra(StickerPackListActivity.EXTRA_STICKER_PACK_COUNT, stickerPackCount);
         startActivity(intent);
         finish();
         overridePendingTransition(0, 0);
@@ -65,6 +66,7 @@ public class EntryActivity extends BaseActivity {
 
     static class LoadListAsyncTask extends AsyncTask<Void, Void, Pair<String, ArrayList<StickerPack>>> {
         private final WeakReference<EntryActivity> contextWeakReference;
+        private int stickerPackCount;
 
         LoadListAsyncTask(EntryActivity activity) {
             this.contextWeakReference = new WeakReference<>(activity);
@@ -76,7 +78,9 @@ public class EntryActivity extends BaseActivity {
             try {
                 final Context context = contextWeakReference.get();
                 if (context != null) {
-                    stickerPackList = StickerPackLoader.fetchStickerPacks(context);
+                    //only the first page, the list loads the rest as it is scrolled.
+                    stickerPackList = StickerPackLoader.fetchStickerPackPage(context, null, 0, StickerPackListActivity.PACK_PAGE_SIZE);
+                    stickerPackCount = StickerPackLoader.fetchStickerPackCount(context);
                     return new Pair<>(null, stickerPackList);
                 } else {
                     return new Pair<>("could not fetch sticker packs", null);
@@ -95,7 +99,7 @@ public class EntryActivity extends BaseActivity {
                 if (stringListPair.first != null) {
                     entryActivity.showErrorMessage(stringListPair.first);
                 } else {
-                    entryActivity.showStickerPack(stringListPair.second);
+                    entryActivity.showStickerPack(stringListPair.second, stickerPackCount);
                 }
             }
         }
@@ -18,6 +18,13 @@ class Sticker implements Parcelable {
     final List<String> emojis;
     final String accessibilityText;
     long size;
+    //recorded when a user sticker is stored, 0 and null for bundled stickers that have to be read to know them.
+    int width;
+    int height;
+    int frameCount;
+    int duration;
+    int minFrameDuration;
+    String hash;
 
     Sticker(String imageFileName, List<String> emojis, String accessibilityText) {
         this.imageFileName = imageFileName;
@@ -30,6 +37,12 @@ class Sticker implements Parcelable {
         emojis = in.createStringArrayList();
         accessibilityText = in.readString();
         size = in.readLong();
+        width = in.readInt();
+        height = in.readInt();
+        frameCount = in.readInt();
+        duration = in.readInt();
+        minFrameDuration = in.readInt();
+        hash = in.readString();
     }
 
     public static final Creator<Sticker> CREATOR = new Creator<Sticker>() {
@@ -44,10 +57,36 @@ class Sticker implements Parcelable {
         }
     };
 
+    //a copy the caller can change without touching stickers shared by the store.
+    Sticker copy() {
+        final Sticker copy = new Sticker(imageFileName, emojis, accessibilityText);
+        copy.size = size;
+        copy.setImageInfo(width, height, frameCount, duration, minFrameDuration);
+        copy.hash = hash;
+        return copy;
+    }
+
     public void setSize(long size) {
         this.size = size;
     }
 
+    void setImageInfo(int width, int height, int frameCount, int duration, int minFrameDuration) {
+        this.width = width;
+        this.height = height;
+        this.frameCount = frameCount;
+        this.duration = duration;
+        this.minFrameDuration = minFrameDuration;
+    }
+
+    void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    //size, dimensions and timing are known without reading the file.
+    boolean hasImageInfo() {
+        return size > 0 && frameCount > 0;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -59,5 +98,11 @@ class Sticker implements Parcelable {
         dest.writeStringList(emojis);
         dest.writeString(accessibilityText);
         dest.writeLong(size);
+        dest.writeInt(width);
+        dest.writeInt(height);
+        dest.writeInt(frameCount);
+        dest.writeInt(duration);
+        dest.writeInt(minFrameDuration);
+        dest.writeString(hash);
     }
 }
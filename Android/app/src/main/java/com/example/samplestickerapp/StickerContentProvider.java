@@ -8,17 +8,25 @@
 
 package com.example.samplestickerapp;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.graphics.Point;
 import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
 import android.os.ParcelFileDescriptor;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -26,11 +34,20 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 public class StickerContentProvider extends ContentProvider {
@@ -59,6 +76,18 @@ public class StickerContentProvider extends ContentProvider {
 
     public static final Uri AUTHORITY_URI = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY).appendPath(StickerContentProvider.METADATA).build();
 
+    //query parameter of the change notifications, whether the pack was added, changed or removed.
+    static final String CHANGE_TYPE = "change";
+    static final String CHANGE_INSERT = "insert";
+    static final String CHANGE_UPDATE = "update";
+    static final String CHANGE_DELETE = "delete";
+
+    //content uri of the image to encode when inserting a sticker into a custom pack.
+    static final String STICKER_IMAGE_URI = "sticker_image_uri";
+
+    //the pending edits per pack while applyBatch runs on this thread, null otherwise.
+    private static final ThreadLocal<Map<String, UserStickerPackStore.PackEdit>> BATCH = new ThreadLocal<>();
+
     /**
      * Do not change the values in the UriMatcher because otherwise, WhatsApp will not be able to fetch the stickers from the ContentProvider.
      */
@@ -74,6 +103,59 @@ public class StickerContentProvider extends ContentProvider {
     static final String STICKERS_ASSET = "stickers_asset";
     private static final int STICKERS_ASSET_CODE = 4;
 
+    //optional size hint in pixels on sticker asset uris, the in-app list and grid ask for a downscaled rendition.
+    static final String THUMBNAIL_SIZE = "size";
+
+    //every visible pack's stickers in one cursor, only for the app itself.
+    static final String ALL_STICKERS = "all_stickers";
+    private static final int ALL_STICKERS_CODE = 5;
+
+    //the provider's own call metrics, only registered in debug builds and only for the app itself.
+    static final String METRICS = "metrics";
+    private static final int METRICS_CODE = 6;
+
+    //the packs that changed since the caller's last load, only for the app itself.
+    static final String METADATA_CHANGES = "metadata_changes";
+    private static final int METADATA_CHANGES_CODE = 7;
+    //1 on the tombstone rows of metadata_changes, for packs the caller knows that are gone.
+    static final String STICKER_PACK_DELETED = "sticker_pack_deleted";
+    //"false" on metadata_changes leaves out packs the caller does not know, for callers holding only some pages.
+    static final String CHANGES_INCLUDE_NEW = "include_new";
+
+    //paging of metadata and all_stickers for the app's own list, in the order the packs are always listed in.
+    static final String PAGE_LIMIT = "limit";
+    static final String PAGE_OFFSET = "offset";
+    static final String PAGE_AFTER = "after";
+
+    //metric slot names, indexed by match code.
+    private static final String[] CODE_NAMES = {"unknown", METADATA, METADATA + "/*", STICKERS + "/*", STICKERS_ASSET + "/*/*", ALL_STICKERS, METRICS, METADATA_CHANGES};
+
+    private static final String[] PACK_COLUMNS = {
+            STICKER_PACK_IDENTIFIER_IN_QUERY,
+            STICKER_PACK_NAME_IN_QUERY,
+            STICKER_PACK_PUBLISHER_IN_QUERY,
+            STICKER_PACK_ICON_IN_QUERY,
+            ANDROID_APP_DOWNLOAD_LINK_IN_QUERY,
+            IOS_APP_DOWNLOAD_LINK_IN_QUERY,
+            PUBLISHER_EMAIL,
+            PUBLISHER_WEBSITE,
+            PRIVACY_POLICY_WEBSITE,
+            LICENSE_AGREEMENT_WEBSITE,
+            IMAGE_DATA_VERSION,
+            AVOID_CACHE,
+            ANIMATED_STICKER_PACK,
+    };
+    private static final String[] STICKER_COLUMNS = {STICKER_FILE_NAME_IN_QUERY, STICKER_FILE_EMOJI_IN_QUERY, STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY};
+    private static final String[] CHANGED_PACK_COLUMNS = withColumn(PACK_COLUMNS, STICKER_PACK_DELETED);
+    private static final String[] ALL_STICKER_COLUMNS = {STICKER_PACK_IDENTIFIER_IN_QUERY, STICKER_FILE_NAME_IN_QUERY, STICKER_FILE_EMOJI_IN_QUERY, STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY};
+
+    //parsed on the first query and kept for the process, the bundled contents.json cannot change while the apk is installed.
+    @Nullable
+    private volatile List<StickerPack> bundledPacks;
+    //bundled and user packs merged, replaced whenever the user packs or the hidden set change.
+    @Nullable
+    private volatile StickerPackIndex packIndex;
+
     @Override
     public boolean onCreate() {
         final String authority = BuildConfig.CONTENT_PROVIDER_AUTHORITY;
@@ -91,6 +173,13 @@ public class StickerContentProvider extends ContentProvider {
         MATCHER.addURI(authority, STICKERS + "/*", STICKERS_CODE);
         MATCHER.addURI(authority, STICKERS_ASSET + "/*/*", STICKERS_ASSET_CODE);
 
+        //the stickers of all packs at once, keyed by pack identifier. Not part of the contract with WhatsApp.
+        MATCHER.addURI(authority, ALL_STICKERS, ALL_STICKERS_CODE);
+        MATCHER.addURI(authority, METADATA_CHANGES, METADATA_CHANGES_CODE);
+
+        if (BuildConfig.DEBUG) {
+            MATCHER.addURI(authority, METRICS, METRICS_CODE);
+        }
         return true;
     }
 
@@ -98,12 +187,30 @@ public class StickerContentProvider extends ContentProvider {
     public Cursor query(@NonNull Uri uri, @Nullable String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
         final int code = MATCHER.match(uri);
+        final long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            final Cursor cursor = runQuery(code, uri, projection, selectionArgs);
+            failed = false;
+            return cursor;
+        } finally {
+            StickerProviderMetrics.recordCall(code, System.nanoTime() - startNanos, failed);
+        }
+    }
+
+    private Cursor runQuery(int code, @NonNull Uri uri, @Nullable String[] projection, @Nullable String[] selectionArgs) {
         if (code == METADATA_CODE) {
-            return getPackForAllStickerPacks(uri);
+            return getPackForAllStickerPacks(uri, projection);
         } else if (code == METADATA_CODE_FOR_SINGLE_PACK) {
-            return getCursorForSingleStickerPack(uri);
+            return getCursorForSingleStickerPack(uri, projection);
         } else if (code == STICKERS_CODE) {
-            return getStickersForAStickerPack(uri);
+            return getStickersForAStickerPack(uri, projection);
+        } else if (code == ALL_STICKERS_CODE) {
+            return getStickersForAllStickerPacks(uri, projection, selectionArgs);
+        } else if (code == METRICS_CODE) {
+            return getMetrics(uri);
+        } else if (code == METADATA_CHANGES_CODE) {
+            return getChangedStickerPacks(uri, projection, selectionArgs);
         } else {
             throw new IllegalArgumentException("Unknown URI: " + uri);
         }
@@ -114,11 +221,49 @@ public class StickerContentProvider extends ContentProvider {
     public AssetFileDescriptor openAssetFile(@NonNull Uri uri, @NonNull String mode) {
         final int matchCode = MATCHER.match(uri);
         if (matchCode == STICKERS_ASSET_CODE) {
-            return getImageAsset(uri);
+            return openImageAsset(uri, parseThumbnailSize(uri.getQueryParameter(THUMBNAIL_SIZE)));
         }
         return null;
     }
 
+    @Nullable
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(@NonNull Uri uri, @NonNull String mimeTypeFilter, @Nullable Bundle opts) throws FileNotFoundException {
+        //the size hint image loaders pass through ContentResolver#openTypedAssetFileDescriptor.
+        final Point size = opts != null ? opts.<Point>getParcelable(ContentResolver.EXTRA_SIZE) : null;
+        if (size == null || MATCHER.match(uri) != STICKERS_ASSET_CODE || !ClipDescription.compareMimeTypes(getType(uri), mimeTypeFilter)) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+        return openImageAsset(uri, Math.max(size.x, size.y));
+    }
+
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        StickerProviderMetrics.dump(writer, CODE_NAMES);
+    }
+
+    private AssetFileDescriptor openImageAsset(@NonNull Uri uri, int thumbnailSize) {
+        final long startNanos = System.nanoTime();
+        AssetFileDescriptor file = null;
+        try {
+            file = getImageAsset(uri, thumbnailSize);
+            return file;
+        } finally {
+            StickerProviderMetrics.recordCall(STICKERS_ASSET_CODE, System.nanoTime() - startNanos, file == null);
+        }
+    }
+
+    private static int parseThumbnailSize(@Nullable String size) {
+        if (TextUtils.isEmpty(size)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(size);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid thumbnail size: " + size);
+        }
+    }
+
 
     @Override
     public String getType(@NonNull Uri uri) {
@@ -130,6 +275,12 @@ public class StickerContentProvider extends ContentProvider {
                 return "vnd.android.cursor.item/vnd." + BuildConfig.CONTENT_PROVIDER_AUTHORITY + "." + METADATA;
             case STICKERS_CODE:
                 return "vnd.android.cursor.dir/vnd." + BuildConfig.CONTENT_PROVIDER_AUTHORITY + "." + STICKERS;
+            case ALL_STICKERS_CODE:
+                return "vnd.android.cursor.dir/vnd." + BuildConfig.CONTENT_PROVIDER_AUTHORITY + "." + ALL_STICKERS;
+            case METRICS_CODE:
+                return "vnd.android.cursor.dir/vnd." + BuildConfig.CONTENT_PROVIDER_AUTHORITY + "." + METRICS;
+            case METADATA_CHANGES_CODE:
+                return "vnd.android.cursor.dir/vnd." + BuildConfig.CONTENT_PROVIDER_AUTHORITY + "." + METADATA_CHANGES;
             case STICKERS_ASSET_CODE:
                 if (uri.getLastPathSegment() != null && uri.getLastPathSegment().toLowerCase().endsWith(".png")) {
                     return "image/png";
@@ -140,7 +291,41 @@ public class StickerContentProvider extends ContentProvider {
         }
     }
 
-    private synchronized List<StickerPack> readAssetContentFile(@NonNull Context context) {
+    @NonNull
+    private List<StickerPack> getBundledPacks(@NonNull Context context) {
+        final List<StickerPack> current = bundledPacks;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (bundledPacks == null) {
+                bundledPacks = Collections.unmodifiableList(readAssetContentFile(context));
+            }
+            return bundledPacks;
+        }
+    }
+
+    //rebuilt only when the user packs or the hidden set changed, concurrent rebuilds produce the same index.
+    @NonNull
+    private StickerPackIndex getPackIndex(@NonNull Context context) {
+        //loads the hidden set first, so the version read next already accounts for it.
+        UserStickerPackStore.getHiddenPacks(context);
+        //versions are read before the data, a change in between only costs one more rebuild later.
+        final long generation = UserStickerPackStore.getGeneration(context);
+        final long hiddenVersion = UserStickerPackStore.getHiddenPacksVersion();
+        final StickerPackIndex current = packIndex;
+        if (current != null && current.generation == generation && current.hiddenVersion == hiddenVersion) {
+            StickerProviderMetrics.recordPackIndexLookup(true);
+            return current;
+        }
+        StickerProviderMetrics.recordPackIndexLookup(false);
+        final StickerPackIndex rebuilt = new StickerPackIndex(generation, hiddenVersion, getBundledPacks(context),
+                UserStickerPackStore.loadStickerPacks(context), UserStickerPackStore.getHiddenPacks(context));
+        packIndex = rebuilt;
+        return rebuilt;
+    }
+
+    private List<StickerPack> readAssetContentFile(@NonNull Context context) {
         try (InputStream contentsInputStream = context.getAssets().open(CONTENT_FILE_NAME)) {
             return ContentFileParser.parseStickerPacks(contentsInputStream);
         } catch (IOException | IllegalStateException e) {
@@ -148,88 +333,148 @@ public class StickerContentProvider extends ContentProvider {
         }
     }
 
-    private List<StickerPack> getStickerPackList() {
-        final Context context = Objects.requireNonNull(getContext());
-        final List<StickerPack> packs = new ArrayList<>(readAssetContentFile(context));
-        packs.addAll(UserStickerPackStore.loadStickerPacks(context));
-        final List<StickerPack> visiblePacks = new ArrayList<>();
-        for (StickerPack pack : packs) {
-            if (!UserStickerPackStore.isPackHidden(context, pack.identifier)) {
-                visiblePacks.add(pack);
-            }
+    private Cursor getPackForAllStickerPacks(@NonNull Uri uri, @Nullable String[] projection) {
+        final StickerPackIndex index = getPackIndex(Objects.requireNonNull(getContext()));
+        final int start = getPageStart(uri, index);
+        final int end = getPageEnd(uri, index, start);
+        return withNotificationUri(new StickerProviderCursor(PACK_COLUMNS, index.packColumns, start, end, projection), uri);
+    }
+
+    //right after the PAGE_AFTER pack if it is still there, at PAGE_OFFSET otherwise.
+    private static int getPageStart(@NonNull Uri uri, @NonNull StickerPackIndex index) {
+        if (uri.getQueryParameter(PAGE_LIMIT) == null) {
+            return 0;
         }
-        return visiblePacks;
+        //paging is for the app's own list, WhatsApp always reads every pack.
+        enforceCalledByApp(uri);
+        return index.getPageStart(uri.getQueryParameter(PAGE_AFTER), parsePageParameter(uri, PAGE_OFFSET, 0));
     }
 
-    private Cursor getPackForAllStickerPacks(@NonNull Uri uri) {
-        return getStickerPackInfo(uri, getStickerPackList());
+    private static int getPageEnd(@NonNull Uri uri, @NonNull StickerPackIndex index, int start) {
+        if (uri.getQueryParameter(PAGE_LIMIT) == null) {
+            return index.packCount;
+        }
+        final int limit = parsePageParameter(uri, PAGE_LIMIT, 0);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("page limit should be positive, uri: " + uri);
+        }
+        return index.getPageEnd(start, limit);
     }
 
-    private Cursor getCursorForSingleStickerPack(@NonNull Uri uri) {
-        final String identifier = uri.getLastPathSegment();
-        for (StickerPack stickerPack : getStickerPackList()) {
-            if (identifier.equals(stickerPack.identifier)) {
-                return getStickerPackInfo(uri, Collections.singletonList(stickerPack));
-            }
+    private static int parsePageParameter(@NonNull Uri uri, @NonNull String name, int defaultValue) {
+        final String value = uri.getQueryParameter(name);
+        if (TextUtils.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid " + name + ", uri: " + uri);
         }
+    }
 
-        return getStickerPackInfo(uri, new ArrayList<>());
+    private Cursor getCursorForSingleStickerPack(@NonNull Uri uri, @Nullable String[] projection) {
+        final StickerPackIndex index = getPackIndex(Objects.requireNonNull(getContext()));
+        final StickerPackIndex.Entry entry = index.entries.get(uri.getLastPathSegment());
+        final int row = entry != null ? entry.packRow : 0;
+        return withNotificationUri(new StickerProviderCursor(PACK_COLUMNS, index.packColumns, row, entry != null ? row + 1 : row, projection), uri);
     }
 
     @NonNull
-    private Cursor getStickerPackInfo(@NonNull Uri uri, @NonNull List<StickerPack> stickerPackList) {
-        MatrixCursor cursor = new MatrixCursor(
-                new String[]{
-                        STICKER_PACK_IDENTIFIER_IN_QUERY,
-                        STICKER_PACK_NAME_IN_QUERY,
-                        STICKER_PACK_PUBLISHER_IN_QUERY,
-                        STICKER_PACK_ICON_IN_QUERY,
-                        ANDROID_APP_DOWNLOAD_LINK_IN_QUERY,
-                        IOS_APP_DOWNLOAD_LINK_IN_QUERY,
-                        PUBLISHER_EMAIL,
-                        PUBLISHER_WEBSITE,
-                        PRIVACY_POLICY_WEBSITE,
-                        LICENSE_AGREEMENT_WEBSITE,
-                        IMAGE_DATA_VERSION,
-                        AVOID_CACHE,
-                        ANIMATED_STICKER_PACK,
-                });
-        for (StickerPack stickerPack : stickerPackList) {
-            MatrixCursor.RowBuilder builder = cursor.newRow();
-            builder.add(stickerPack.identifier);
-            builder.add(stickerPack.name);
-            builder.add(stickerPack.publisher);
-            builder.add(stickerPack.trayImageFile);
-            builder.add(stickerPack.androidPlayStoreLink);
-            builder.add(stickerPack.iosAppStoreLink);
-            builder.add(stickerPack.publisherEmail);
-            builder.add(stickerPack.publisherWebsite);
-            builder.add(stickerPack.privacyPolicyWebsite);
-            builder.add(stickerPack.licenseAgreementWebsite);
-            builder.add(stickerPack.imageDataVersion);
-            builder.add(stickerPack.avoidCache ? 1 : 0);
-            builder.add(stickerPack.animatedStickerPack ? 1 : 0);
+    private Cursor getStickersForAStickerPack(@NonNull Uri uri, @Nullable String[] projection) {
+        final StickerPackIndex index = getPackIndex(Objects.requireNonNull(getContext()));
+        final StickerPackIndex.Entry entry = index.entries.get(uri.getLastPathSegment());
+        if (entry != null && entry.duplicate != null) {
+            final StickerPackIndex.RowList stickerRows = new StickerPackIndex.RowList();
+            entry.addStickerRows(stickerRows);
+            final Object[] columns = StickerPackIndex.selectRows(index.stickerColumns, stickerRows, 0);
+            return withNotificationUri(new StickerProviderCursor(STICKER_COLUMNS, columns, 0, stickerRows.size, projection), uri);
         }
-        cursor.setNotificationUri(Objects.requireNonNull(getContext()).getContentResolver(), uri);
-        return cursor;
+        final int start = entry != null ? entry.firstStickerRow : 0;
+        final int end = entry != null ? entry.endStickerRow : 0;
+        return withNotificationUri(new StickerProviderCursor(STICKER_COLUMNS, index.stickerColumns, start, end, projection), uri);
     }
 
     @NonNull
-    private Cursor getStickersForAStickerPack(@NonNull Uri uri) {
-        final String identifier = uri.getLastPathSegment();
-        MatrixCursor cursor = new MatrixCursor(new String[]{STICKER_FILE_NAME_IN_QUERY, STICKER_FILE_EMOJI_IN_QUERY, STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY});
-        for (StickerPack stickerPack : getStickerPackList()) {
-            if (identifier.equals(stickerPack.identifier)) {
-                for (Sticker sticker : stickerPack.getStickers()) {
-                    cursor.addRow(new Object[]{sticker.imageFileName, TextUtils.join(",", sticker.emojis), sticker.accessibilityText});
+    //identifiers in the selection arguments narrow it to those packs, unknown ones are skipped.
+    private Cursor getStickersForAllStickerPacks(@NonNull Uri uri, @Nullable String[] projection, @Nullable String[] identifiers) {
+        enforceCalledByApp(uri);
+        final StickerPackIndex index = getPackIndex(Objects.requireNonNull(getContext()));
+        //every pack's sticker notifications are below the stickers path.
+        final Uri notificationUri = new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY).appendPath(STICKERS).build();
+        if (identifiers != null) {
+            final StickerPackIndex.RowList stickerRows = new StickerPackIndex.RowList();
+            for (String identifier : new LinkedHashSet<>(Arrays.asList(identifiers))) {
+                final StickerPackIndex.Entry entry = index.entries.get(identifier);
+                if (entry != null) {
+                    entry.addStickerRows(stickerRows);
                 }
             }
+            final Object[] columns = StickerPackIndex.selectRows(index.allStickerColumns, stickerRows, 0);
+            return withNotificationUri(new StickerProviderCursor(ALL_STICKER_COLUMNS, columns, 0, stickerRows.size, projection), notificationUri);
+        }
+        //a page of packs is a contiguous range of sticker rows too.
+        final int start = getPageStart(uri, index);
+        final int end = getPageEnd(uri, index, start);
+        return withNotificationUri(new StickerProviderCursor(ALL_STICKER_COLUMNS, index.allStickerColumns, index.packStickerRows[start], index.packStickerRows[end], projection), notificationUri);
+    }
+
+    //selection arguments are identifier and image_data_version pairs, tombstones only have the identifier set.
+    @NonNull
+    private Cursor getChangedStickerPacks(@NonNull Uri uri, @Nullable String[] projection, @Nullable String[] knownVersions) {
+        enforceCalledByApp(uri);
+        if (knownVersions != null && knownVersions.length % 2 != 0) {
+            throw new IllegalArgumentException("known versions should be identifier and version pairs, uri: " + uri);
+        }
+        final Map<String, String> known = new HashMap<>();
+        if (knownVersions != null) {
+            for (int i = 0; i < knownVersions.length; i += 2) {
+                known.put(knownVersions[i], knownVersions[i + 1]);
+            }
         }
+        final boolean includeNew = !"false".equals(uri.getQueryParameter(CHANGES_INCLUDE_NEW));
+        final Object[] columns = getPackIndex(Objects.requireNonNull(getContext())).getChangedPackColumns(known, includeNew);
+        final int rowCount = ((String[]) columns[0]).length;
+        return withNotificationUri(new StickerProviderCursor(CHANGED_PACK_COLUMNS, columns, 0, rowCount, projection), AUTHORITY_URI);
+    }
+
+    @NonNull
+    private static String[] withColumn(@NonNull String[] columns, @NonNull String column) {
+        final String[] result = Arrays.copyOf(columns, columns.length + 1);
+        result[columns.length] = column;
+        return result;
+    }
+
+    @NonNull
+    private Cursor getMetrics(@NonNull Uri uri) {
+        enforceCalledByApp(uri);
+        final MatrixCursor cursor = new MatrixCursor(StickerProviderMetrics.COLUMNS);
+        for (Object[] row : StickerProviderMetrics.getRows(CODE_NAMES)) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    //cursors over all packs are registered on the parent path, so they hear about every pack.
+    static void notifyPackChanged(@NonNull Context context, @NonNull String identifier, @NonNull String changeType) {
+        final ContentResolver contentResolver = context.getContentResolver();
+        contentResolver.notifyChange(getChangeUri(METADATA, identifier, changeType), null);
+        contentResolver.notifyChange(getChangeUri(STICKERS, identifier, changeType), null);
+    }
+
+    @NonNull
+    private static Uri getChangeUri(@NonNull String path, @NonNull String identifier, @NonNull String changeType) {
+        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY)
+                .appendPath(path).appendPath(identifier).appendQueryParameter(CHANGE_TYPE, changeType).build();
+    }
+
+    @NonNull
+    private Cursor withNotificationUri(@NonNull Cursor cursor, @NonNull Uri uri) {
         cursor.setNotificationUri(Objects.requireNonNull(getContext()).getContentResolver(), uri);
         return cursor;
     }
 
-    private AssetFileDescriptor getImageAsset(Uri uri) throws IllegalArgumentException {
+    private AssetFileDescriptor getImageAsset(Uri uri, int thumbnailSize) throws IllegalArgumentException {
         AssetManager am = Objects.requireNonNull(getContext()).getAssets();
         final List<String> pathSegments = uri.getPathSegments();
         if (pathSegments.size() != 3) {
@@ -243,59 +488,222 @@ public class StickerContentProvider extends ContentProvider {
         if (TextUtils.isEmpty(fileName)) {
             throw new IllegalArgumentException("file name is empty, uri: " + uri);
         }
-        //making sure the file that is trying to be fetched is in the list of stickers.
-        for (StickerPack stickerPack : getStickerPackList()) {
-            if (identifier.equals(stickerPack.identifier)) {
-                if (fileName.equals(stickerPack.trayImageFile)) {
-                    return fetchFile(uri, am, fileName, identifier);
-                } else {
-                    for (Sticker sticker : stickerPack.getStickers()) {
-                        if (fileName.equals(sticker.imageFileName)) {
-                            return fetchFile(uri, am, fileName, identifier);
-                        }
-                    }
-                }
+        final Context context = Objects.requireNonNull(getContext());
+        //making sure the file that is trying to be fetched is in the list of stickers, hidden packs are not indexed.
+        final StickerPackIndex.Entry packEntry = getPackIndex(context).entries.get(identifier);
+        final StickerPackIndex.Entry entry = packEntry != null ? packEntry.findFile(fileName) : null;
+        if (entry == null) {
+            return null;
+        }
+        final int renditionSize = StickerThumbnailCache.getRenditionSize(thumbnailSize);
+        if (renditionSize > 0 && fileName.endsWith(".webp")) {
+            final AssetFileDescriptor thumbnail = fetchThumbnail(uri, context, entry, fileName, renditionSize);
+            if (thumbnail != null) {
+                return thumbnail;
             }
         }
-        return null;
+        if (entry.custom) {
+            return fetchCustomFile(uri, UserStickerPackStore.getStickerFile(context, identifier, fileName));
+        }
+        return fetchFile(uri, am, fileName, identifier);
     }
 
-    private AssetFileDescriptor fetchFile(@NonNull Uri uri, @NonNull AssetManager am, @NonNull String fileName, @NonNull String identifier) {
-        final Context context = Objects.requireNonNull(getContext());
-        if (UserStickerPackStore.isCustomPack(context, identifier)) {
+    //null falls back to the full sticker.
+    @Nullable
+    private AssetFileDescriptor fetchThumbnail(@NonNull Uri uri, @NonNull Context context, @NonNull StickerPackIndex.Entry entry, @NonNull String fileName, int size) {
+        final String identifier = entry.pack.identifier;
+        final StickerThumbnailCache.Source source;
+        if (entry.custom) {
             final File file = UserStickerPackStore.getStickerFile(context, identifier, fileName);
-            if (!file.exists()) {
-                return null;
-            }
-            try {
-                return new AssetFileDescriptor(ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
-            } catch (IOException e) {
-                Log.e(context.getPackageName(), "IOException when getting custom asset file, uri:" + uri, e);
-                return null;
-            }
+            source = () -> new FileInputStream(file);
+        } else {
+            final AssetManager am = context.getAssets();
+            source = () -> am.open(identifier + "/" + fileName);
+        }
+        try {
+            final File thumbnail = StickerThumbnailCache.getThumbnail(context, identifier, entry.pack.imageDataVersion, fileName, size, source);
+            return thumbnail != null ? fetchCustomFile(uri, thumbnail) : null;
+        } catch (IOException e) {
+            Log.e(context.getPackageName(), "IOException when getting thumbnail, uri:" + uri, e);
+            return null;
+        }
+    }
+
+    private AssetFileDescriptor fetchCustomFile(@NonNull Uri uri, @NonNull File file) {
+        if (!file.exists()) {
+            return null;
         }
         try {
-            return am.openFd(identifier + "/" + fileName);
+            final AssetFileDescriptor fileDescriptor = new AssetFileDescriptor(ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY), 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+            StickerProviderMetrics.recordBytes(STICKERS_ASSET_CODE, file.length());
+            return fileDescriptor;
         } catch (IOException e) {
-            Log.e(context.getPackageName(), "IOException when getting asset file, uri:" + uri, e);
+            Log.e(Objects.requireNonNull(getContext()).getPackageName(), "IOException when getting custom asset file, uri:" + uri, e);
+            return null;
+        }
+    }
+
+    private AssetFileDescriptor fetchFile(@NonNull Uri uri, @NonNull AssetManager am, @NonNull String fileName, @NonNull String identifier) {
+        try {
+            final AssetFileDescriptor fileDescriptor = am.openFd(identifier + "/" + fileName);
+            StickerProviderMetrics.recordBytes(STICKERS_ASSET_CODE, fileDescriptor.getLength());
+            return fileDescriptor;
+        } catch (IOException e) {
+            Log.e(Objects.requireNonNull(getContext()).getPackageName(), "IOException when getting asset file, uri:" + uri, e);
             return null;
         }
     }
 
 
+    //deletes a custom pack through metadata/<id>, or one of its stickers through stickers_asset/<id>/<file name>.
     @Override
     public int delete(@NonNull Uri uri, @Nullable String selection, String[] selectionArgs) {
-        throw new UnsupportedOperationException("Not supported");
+        enforceCalledByApp(uri);
+        final int code = MATCHER.match(uri);
+        final List<String> pathSegments = uri.getPathSegments();
+        if (code == METADATA_CODE_FOR_SINGLE_PACK) {
+            final String identifier = requireCustomPack(uri.getLastPathSegment());
+            if (BATCH.get() != null) {
+                throw new IllegalArgumentException("packs cannot be deleted in a batch: " + uri);
+            }
+            try {
+                return UserStickerPackStore.deletePack(Objects.requireNonNull(getContext()), identifier) ? 1 : 0;
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        } else if (code == STICKERS_ASSET_CODE) {
+            final String identifier = requireCustomPack(pathSegments.get(1));
+            final String fileName = pathSegments.get(2);
+            //checked up front so a batch fails while its operations are applied, before anything is committed.
+            final StickerPackIndex.Entry entry = getPackIndex(Objects.requireNonNull(getContext())).entries.get(identifier);
+            if (entry == null || entry.findFile(fileName) == null) {
+                throw new IllegalArgumentException("sticker not found: " + uri);
+            }
+            final UserStickerPackStore.PackEdit edit = new UserStickerPackStore.PackEdit();
+            edit.removedStickers.add(fileName);
+            applyEdit(identifier, edit);
+            return 1;
+        }
+        throw new UnsupportedOperationException("Not supported: " + uri);
     }
 
+    //creates a custom pack through metadata, or adds the image in STICKER_IMAGE_URI to one through stickers/<id>.
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new UnsupportedOperationException("Not supported");
+        enforceCalledByApp(uri);
+        final int code = MATCHER.match(uri);
+        if (code == METADATA_CODE) {
+            if (BATCH.get() != null) {
+                throw new IllegalArgumentException("packs cannot be created in a batch: " + uri);
+            }
+            final String name = requireValue(values, STICKER_PACK_NAME_IN_QUERY);
+            final String publisher = requireValue(values, STICKER_PACK_PUBLISHER_IN_QUERY);
+            try {
+                final StickerPack pack = UserStickerPackStore.createPack(Objects.requireNonNull(getContext()), name, publisher);
+                return AUTHORITY_URI.buildUpon().appendPath(pack.identifier).build();
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        } else if (code == STICKERS_CODE) {
+            final String identifier = requireCustomPack(uri.getLastPathSegment());
+            final UserStickerPackStore.PackEdit edit = new UserStickerPackStore.PackEdit();
+            edit.addedImages.add(Uri.parse(requireValue(values, STICKER_IMAGE_URI)));
+            applyEdit(identifier, edit);
+            //the file name is only known once the image is encoded, so the pack's sticker list stands for the new row.
+            return uri;
+        }
+        throw new UnsupportedOperationException("Not supported: " + uri);
     }
 
+    //renames a custom pack or changes its publisher through metadata/<id>.
     @Override
     public int update(@NonNull Uri uri, ContentValues values, String selection,
                       String[] selectionArgs) {
-        throw new UnsupportedOperationException("Not supported");
+        enforceCalledByApp(uri);
+        if (MATCHER.match(uri) != METADATA_CODE_FOR_SINGLE_PACK) {
+            throw new UnsupportedOperationException("Not supported: " + uri);
+        }
+        final String identifier = requireCustomPack(uri.getLastPathSegment());
+        final UserStickerPackStore.PackEdit edit = new UserStickerPackStore.PackEdit();
+        if (values != null && values.containsKey(STICKER_PACK_NAME_IN_QUERY)) {
+            edit.name = requireValue(values, STICKER_PACK_NAME_IN_QUERY);
+        }
+        if (values != null && values.containsKey(STICKER_PACK_PUBLISHER_IN_QUERY)) {
+            edit.publisher = requireValue(values, STICKER_PACK_PUBLISHER_IN_QUERY);
+        }
+        applyEdit(identifier, edit);
+        return 1;
+    }
+
+    //edits are collected per pack and committed as one store transaction, results are returned only once it has.
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations) throws OperationApplicationException {
+        enforceCalledByApp(AUTHORITY_URI);
+        final Map<String, UserStickerPackStore.PackEdit> edits = new LinkedHashMap<>();
+        final ContentProviderResult[] results;
+        BATCH.set(edits);
+        try {
+            results = super.applyBatch(operations);
+        } finally {
+            BATCH.remove();
+        }
+        if (!edits.isEmpty()) {
+            try {
+                UserStickerPackStore.editPacks(Objects.requireNonNull(getContext()), edits);
+            } catch (IOException e) {
+                throw new OperationApplicationException("failed to apply batch: " + e.getMessage());
+            }
+        }
+        return results;
+    }
+
+    private void applyEdit(@NonNull String identifier, @NonNull UserStickerPackStore.PackEdit edit) {
+        final Map<String, UserStickerPackStore.PackEdit> batch = BATCH.get();
+        if (batch == null) {
+            try {
+                UserStickerPackStore.editPack(Objects.requireNonNull(getContext()), identifier, edit);
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            return;
+        }
+        UserStickerPackStore.PackEdit pending = batch.get(identifier);
+        if (pending == null) {
+            pending = new UserStickerPackStore.PackEdit();
+            batch.put(identifier, pending);
+        }
+        if (edit.name != null) {
+            pending.name = edit.name;
+        }
+        if (edit.publisher != null) {
+            pending.publisher = edit.publisher;
+        }
+        pending.addedImages.addAll(edit.addedImages);
+        pending.removedStickers.addAll(edit.removedStickers);
+    }
+
+    //getCallingUid is the app's own uid for calls that did not come through binder too.
+    private static void enforceCalledByApp(@NonNull Uri uri) {
+        if (Binder.getCallingUid() != Process.myUid()) {
+            throw new SecurityException("uri is only available to the app itself: " + uri);
+        }
+    }
+
+    @NonNull
+    private String requireCustomPack(@Nullable String identifier) {
+        if (TextUtils.isEmpty(identifier) || !UserStickerPackStore.isCustomPack(Objects.requireNonNull(getContext()), identifier)) {
+            throw new IllegalArgumentException("not a custom sticker pack: " + identifier);
+        }
+        return identifier;
+    }
+
+    @NonNull
+    private static String requireValue(@Nullable ContentValues values, @NonNull String key) {
+        final String value = values != null ? values.getAsString(key) : null;
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException(key + " is empty");
+        }
+        return value.trim();
     }
 }
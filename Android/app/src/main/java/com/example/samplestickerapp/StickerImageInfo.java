@@ -0,0 +1,122 @@
+package com.example.samplestickerapp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+//reads dimensions and animation timing from the RIFF chunk headers, no pixels are decoded.
+final class StickerImageInfo {
+    private static final int RIFF_HEADER_SIZE = 12;
+    private static final int CHUNK_HEADER_SIZE = 8;
+    private static final int VP8X_ANIMATION_FLAG = 0x02;
+
+    final int width;
+    final int height;
+    final int frameCount;
+    //total animation time in ms, 0 for a still image.
+    final int duration;
+    //shortest frame in ms, 0 for a still image.
+    final int minFrameDuration;
+
+    private StickerImageInfo(int width, int height, int frameCount, int duration, int minFrameDuration) {
+        this.width = width;
+        this.height = height;
+        this.frameCount = frameCount;
+        this.duration = duration;
+        this.minFrameDuration = minFrameDuration;
+    }
+
+    //null if it is not a WebP file this parser understands.
+    @Nullable
+    static StickerImageInfo read(@NonNull File file) throws IOException {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final byte[] header = new byte[RIFF_HEADER_SIZE];
+            if (!readFully(input, header) || !matches(header, 0, "RIFF") || !matches(header, 8, "WEBP")) {
+                return null;
+            }
+            final long end = Math.min(input.length(), CHUNK_HEADER_SIZE + readUInt32(header, 4));
+            final byte[] chunk = new byte[CHUNK_HEADER_SIZE + 16];
+            int width = 0;
+            int height = 0;
+            boolean animated = false;
+            int frameCount = 0;
+            int duration = 0;
+            int minFrameDuration = Integer.MAX_VALUE;
+            long position = RIFF_HEADER_SIZE;
+            while (position + CHUNK_HEADER_SIZE <= end) {
+                input.seek(position);
+                final int read = input.read(chunk);
+                if (read < CHUNK_HEADER_SIZE) {
+                    return null;
+                }
+                final long payloadSize = readUInt32(chunk, 4);
+                if (matches(chunk, 0, "VP8X") && read >= CHUNK_HEADER_SIZE + 10) {
+                    animated = (chunk[CHUNK_HEADER_SIZE] & VP8X_ANIMATION_FLAG) != 0;
+                    width = readUInt24(chunk, CHUNK_HEADER_SIZE + 4) + 1;
+                    height = readUInt24(chunk, CHUNK_HEADER_SIZE + 7) + 1;
+                    if (!animated) {
+                        return new StickerImageInfo(width, height, 1, 0, 0);
+                    }
+                } else if (matches(chunk, 0, "ANMF") && read >= CHUNK_HEADER_SIZE + 16) {
+                    final int frameDuration = readUInt24(chunk, CHUNK_HEADER_SIZE + 12);
+                    frameCount++;
+                    duration += frameDuration;
+                    minFrameDuration = Math.min(minFrameDuration, frameDuration);
+                } else if (!animated && matches(chunk, 0, "VP8 ") && read >= CHUNK_HEADER_SIZE + 10) {
+                    //lossy key frame: 3 byte frame tag, 3 byte start code, then 14 bit width and height.
+                    width = readUInt16(chunk, CHUNK_HEADER_SIZE + 6) & 0x3fff;
+                    height = readUInt16(chunk, CHUNK_HEADER_SIZE + 8) & 0x3fff;
+                    return new StickerImageInfo(width, height, 1, 0, 0);
+                } else if (!animated && matches(chunk, 0, "VP8L") && read >= CHUNK_HEADER_SIZE + 5) {
+                    //lossless: 1 byte signature, then 14 bit width - 1 and 14 bit height - 1.
+                    final long bits = readUInt32(chunk, CHUNK_HEADER_SIZE + 1);
+                    width = (int) (bits & 0x3fff) + 1;
+                    height = (int) ((bits >> 14) & 0x3fff) + 1;
+                    return new StickerImageInfo(width, height, 1, 0, 0);
+                }
+                //chunk payloads are padded to an even size.
+                position += CHUNK_HEADER_SIZE + payloadSize + (payloadSize & 1);
+            }
+            if (!animated || frameCount == 0) {
+                return null;
+            }
+            return new StickerImageInfo(width, height, frameCount, duration, minFrameDuration);
+        }
+    }
+
+    private static boolean readFully(@NonNull RandomAccessFile input, @NonNull byte[] buffer) throws IOException {
+        int offset = 0;
+        while (offset < buffer.length) {
+            final int read = input.read(buffer, offset, buffer.length - offset);
+            if (read == -1) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    private static boolean matches(@NonNull byte[] bytes, int offset, @NonNull String fourCc) {
+        for (int i = 0; i < 4; i++) {
+            if (bytes[offset + i] != fourCc.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readUInt16(@NonNull byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+    }
+
+    private static int readUInt24(@NonNull byte[] bytes, int offset) {
+        return readUInt16(bytes, offset) | (bytes[offset + 2] & 0xff) << 16;
+    }
+
+    private static long readUInt32(@NonNull byte[] bytes, int offset) {
+        return (readUInt24(bytes, offset) | (long) (bytes[offset + 3] & 0xff) << 24) & 0xffffffffL;
+    }
+}
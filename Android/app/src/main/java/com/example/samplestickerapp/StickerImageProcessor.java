@@ -12,12 +12,14 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
 final class StickerImageProcessor {
     private static final int STICKER_SIZE_PX = 512;
     private static final int STICKER_SIZE_LIMIT_BYTES = 100 * 1024;
+    private static final int ANIMATED_STICKER_SIZE_LIMIT_BYTES = 500 * 1024;
     private static final int WEBP_START_QUALITY = 100;
     private static final int WEBP_MIN_QUALITY = 30;
     private static final int WEBP_STEP = 5;
@@ -53,18 +55,45 @@ final class StickerImageProcessor {
         throw new IOException("could not compress image below 100KB");
     }
 
+    //only the file size and the image header are checked, valid stickers are kept as they are.
+    static boolean meetsStickerLimits(@NonNull File file, boolean animated) {
+        if (file.length() > (animated ? ANIMATED_STICKER_SIZE_LIMIT_BYTES : STICKER_SIZE_LIMIT_BYTES)) {
+            return false;
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        return options.outWidth == STICKER_SIZE_PX && options.outHeight == STICKER_SIZE_PX;
+    }
+
     @Nullable
     static Bitmap decodeBitmap(@NonNull InputStream inputStream) {
         return BitmapFactory.decodeStream(inputStream);
     }
 
+    //subsampled so several photos can be encoded in parallel without holding their full resolution bitmaps.
     @Nullable
     private static Bitmap decodeBitmapFromUri(@NonNull ContentResolver contentResolver, @NonNull Uri imageUri) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
+            if (inputStream == null) {
+                return null;
+            }
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        final int shortestSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shortestSide / (sampleSize * 2) >= STICKER_SIZE_PX) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
         try (InputStream inputStream = contentResolver.openInputStream(imageUri)) {
             if (inputStream == null) {
                 return null;
             }
-            return decodeBitmap(inputStream);
+            return BitmapFactory.decodeStream(inputStream, null, options);
         }
     }
 
@@ -11,6 +11,7 @@ package com.example.samplestickerapp;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.util.ArrayList;
 import java.util.List;
 
 class StickerPack implements Parcelable {
@@ -47,6 +48,23 @@ class StickerPack implements Parcelable {
         this.animatedStickerPack = animatedStickerPack;
     }
 
+    //a copy the caller can change without touching packs shared by the store, stickers included.
+    StickerPack copy() {
+        final StickerPack copy = new StickerPack(identifier, name, publisher, trayImageFile, publisherEmail, publisherWebsite, privacyPolicyWebsite, licenseAgreementWebsite, imageDataVersion, avoidCache, animatedStickerPack);
+        copy.iosAppStoreLink = iosAppStoreLink;
+        copy.androidPlayStoreLink = androidPlayStoreLink;
+        copy.isWhitelisted = isWhitelisted;
+        copy.customPack = customPack;
+        if (stickers != null) {
+            final List<Sticker> copiedStickers = new ArrayList<>(stickers.size());
+            for (Sticker sticker : stickers) {
+                copiedStickers.add(sticker.copy());
+            }
+            copy.setStickers(copiedStickers);
+        }
+        return copy;
+    }
+
     void setIsWhitelisted(boolean isWhitelisted) {
         this.isWhitelisted = isWhitelisted;
     }
@@ -0,0 +1,146 @@
+package com.example.samplestickerapp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+//a contents.json next to one folder per pack identifier, like the bundled assets.
+final class StickerPackArchive {
+    static final String CONTENTS_FILE = "contents.json";
+    private static final int MAX_ENTRIES = 1024;
+    private static final long MAX_EXTRACTED_BYTES = 64L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private StickerPackArchive() {
+    }
+
+    static void extract(@NonNull InputStream inputStream, @NonNull File targetDir) throws IOException {
+        if (!targetDir.exists() && !targetDir.mkdirs()) {
+            throw new IOException("failed to create import folder");
+        }
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int entryCount = 0;
+        long extractedBytes = 0;
+        try (ZipInputStream zipInputStream = new ZipInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (++entryCount > MAX_ENTRIES) {
+                    throw new IOException("archive has too many entries");
+                }
+                final File target = resolveEntry(targetDir, entry.getName());
+                if (target == null) {
+                    continue;
+                }
+                final File parent = target.getParentFile();
+                if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                    throw new IOException("failed to create import folder");
+                }
+                try (FileOutputStream outputStream = new FileOutputStream(target, false)) {
+                    int read;
+                    while ((read = zipInputStream.read(buffer)) != -1) {
+                        extractedBytes += read;
+                        if (extractedBytes > MAX_EXTRACTED_BYTES) {
+                            throw new IOException("archive is too large");
+                        }
+                        outputStream.write(buffer, 0, read);
+                    }
+                }
+            }
+        }
+    }
+
+    //images are already compressed, so they are stored as they are.
+    static void write(@NonNull OutputStream outputStream, @NonNull byte[] contents, @NonNull Map<String, File> files) throws IOException {
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE))) {
+            zipOutputStream.putNextEntry(new ZipEntry(CONTENTS_FILE));
+            zipOutputStream.write(contents);
+            zipOutputStream.closeEntry();
+
+            //not closed on its own, closing it would close the zip stream before the central directory is written.
+            final WritableByteChannel zipChannel = Channels.newChannel(zipOutputStream);
+            final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            for (Map.Entry<String, File> file : files.entrySet()) {
+                try (FileInputStream inputStream = new FileInputStream(file.getValue())) {
+                    final FileChannel fileChannel = inputStream.getChannel();
+                    final long size = fileChannel.size();
+                    final ZipEntry entry = new ZipEntry(file.getKey());
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(size);
+                    entry.setCompressedSize(size);
+                    entry.setCrc(checksum(fileChannel, buffer));
+                    zipOutputStream.putNextEntry(entry);
+                    long position = 0;
+                    while (position < size) {
+                        position += fileChannel.transferTo(position, size - position, zipChannel);
+                    }
+                    zipOutputStream.closeEntry();
+                }
+            }
+        }
+    }
+
+    //single pack archives may keep their files at the root.
+    @NonNull
+    static File findPackFile(@NonNull File extractedDir, @NonNull String identifier, @NonNull String fileName) throws IOException {
+        if (!isPlainFileName(fileName)) {
+            throw new IOException("invalid file name in archive: " + fileName);
+        }
+        final File inPackFolder = new File(new File(extractedDir, identifier), fileName);
+        return inPackFolder.exists() ? inPackFolder : new File(extractedDir, fileName);
+    }
+
+    //null for entries that cannot belong to a pack, like the metadata folders some archivers add.
+    @Nullable
+    static File resolveEntry(@NonNull File targetDir, @NonNull String entryName) throws IOException {
+        final String[] segments = entryName.split("/");
+        for (String segment : segments) {
+            if ("..".equals(segment)) {
+                throw new IOException("invalid entry in archive: " + entryName);
+            }
+        }
+        if (segments.length == 1 && isPlainFileName(segments[0])) {
+            return new File(targetDir, segments[0]);
+        }
+        if (segments.length == 2 && isPlainFileName(segments[0]) && isPlainFileName(segments[1])) {
+            return new File(new File(targetDir, segments[0]), segments[1]);
+        }
+        return null;
+    }
+
+    private static long checksum(@NonNull FileChannel fileChannel, @NonNull ByteBuffer buffer) throws IOException {
+        final CRC32 crc = new CRC32();
+        long position = 0;
+        int read;
+        buffer.clear();
+        while ((read = fileChannel.read(buffer, position)) != -1) {
+            crc.update(buffer.array(), 0, read);
+            position += read;
+            buffer.clear();
+        }
+        return crc.getValue();
+    }
+
+    private static boolean isPlainFileName(@NonNull String name) {
+        return !name.isEmpty() && !name.startsWith(".") && !name.startsWith("__") && !name.contains("/") && !name.contains("\\");
+    }
+}
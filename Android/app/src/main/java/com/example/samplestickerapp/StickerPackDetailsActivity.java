@@ -9,10 +9,12 @@
 package com.example.samplestickerapp;
 
 import android.content.ActivityNotFoundException;
+import android.content.ClipData;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.text.format.Formatter;
 import android.view.Menu;
@@ -32,6 +34,8 @@ import com.facebook.drawee.view.SimpleDraweeView;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class StickerPackDetailsActivity extends AddStickerPackActivity {
 
@@ -49,6 +53,7 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
     public static final String EXTRA_STICKER_PACK_TRAY_ICON = "sticker_pack_tray_icon";
     public static final String EXTRA_SHOW_UP_BUTTON = "show_up_button";
     public static final String EXTRA_STICKER_PACK_DATA = "sticker_pack";
+    public static final String EXTRA_DELETED_STICKER_PACK_ID = "deleted_sticker_pack_id";
     private static final int PICK_IMAGE_REQUEST = 301;
 
 
@@ -215,6 +220,7 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
         final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.addCategory(Intent.CATEGORY_OPENABLE);
         intent.setType("image/*");
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         try {
             startActivityForResult(intent, PICK_IMAGE_REQUEST);
         } catch (ActivityNotFoundException e) {
@@ -252,8 +258,12 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
         dialog.getButton(DialogInterface.BUTTON_NEGATIVE).setTextColor(ContextCompat.getColor(this, R.color.colorAccent));
     }
 
-    private void reloadCurrentPack() {
-        new ReloadPackAsyncTask(this).execute(stickerPack.identifier);
+    private void showUpdatedPack(@NonNull StickerPack pack) {
+        stickerPack = pack;
+        updatePackUI();
+        whiteListCheckAsyncTask = new WhiteListCheckAsyncTask(this);
+        whiteListCheckAsyncTask.execute(pack);
+        invalidateOptionsMenu();
     }
 
     private void updatePackUI() {
@@ -269,8 +279,19 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
-        if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null && data.getData() != null) {
-            new AddStickerAsyncTask(this).execute(data.getData());
+        if (requestCode == PICK_IMAGE_REQUEST && resultCode == RESULT_OK && data != null) {
+            final List<Uri> imageUris = new ArrayList<>();
+            final ClipData clipData = Build.VERSION.SDK_INT >= 16 ? data.getClipData() : null;
+            if (clipData != null) {
+                for (int i = 0; i < clipData.getItemCount(); i++) {
+                    imageUris.add(clipData.getItemAt(i).getUri());
+                }
+            } else if (data.getData() != null) {
+                imageUris.add(data.getData());
+            }
+            if (!imageUris.isEmpty()) {
+                new AddStickerAsyncTask(this).execute(imageUris.toArray(new Uri[0]));
+            }
         }
     }
 
@@ -302,6 +323,7 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
 
     static class AddStickerAsyncTask extends AsyncTask<Uri, Void, String> {
         private final WeakReference<StickerPackDetailsActivity> activityReference;
+        private StickerPack updatedPack;
 
         AddStickerAsyncTask(StickerPackDetailsActivity activity) {
             this.activityReference = new WeakReference<>(activity);
@@ -314,8 +336,7 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
                 return "activity unavailable";
             }
             try {
-                UserStickerPackStore.addStickerToPack(activity, activity.stickerPack.identifier, uris[0]);
-                activity.getContentResolver().notifyChange(StickerContentProvider.AUTHORITY_URI, null);
+                updatedPack = UserStickerPackStore.addStickersToPack(activity, activity.stickerPack.identifier, Arrays.asList(uris));
                 return null;
             } catch (Exception e) {
                 return e.getMessage();
@@ -332,51 +353,13 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
                 MessageDialogFragment.newInstance(R.string.title_validation_error, error).show(activity.getSupportFragmentManager(), "add_sticker_error");
                 return;
             }
-            activity.reloadCurrentPack();
-        }
-    }
-
-    static class ReloadPackAsyncTask extends AsyncTask<String, Void, StickerPack> {
-        private final WeakReference<StickerPackDetailsActivity> activityReference;
-
-        ReloadPackAsyncTask(StickerPackDetailsActivity activity) {
-            this.activityReference = new WeakReference<>(activity);
-        }
-
-        @Override
-        protected StickerPack doInBackground(String... identifiers) {
-            final StickerPackDetailsActivity activity = activityReference.get();
-            if (activity == null) {
-                return null;
-            }
-            try {
-                ArrayList<StickerPack> packs = StickerPackLoader.fetchStickerPacks(activity);
-                for (StickerPack pack : packs) {
-                    if (identifiers[0].equals(pack.identifier)) {
-                        return pack;
-                    }
-                }
-            } catch (Exception ignored) {
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(StickerPack pack) {
-            final StickerPackDetailsActivity activity = activityReference.get();
-            if (activity == null || pack == null) {
-                return;
-            }
-            activity.stickerPack = pack;
-            activity.updatePackUI();
-            activity.whiteListCheckAsyncTask = new WhiteListCheckAsyncTask(activity);
-            activity.whiteListCheckAsyncTask.execute(pack);
-            activity.invalidateOptionsMenu();
+            activity.showUpdatedPack(updatedPack);
         }
     }
 
     static class DeletePackAsyncTask extends AsyncTask<String, Void, String> {
         private final WeakReference<StickerPackDetailsActivity> activityReference;
+        private String trashedIdentifier;
 
         DeletePackAsyncTask(StickerPackDetailsActivity activity) {
             this.activityReference = new WeakReference<>(activity);
@@ -394,10 +377,10 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
                     if (!deleted) {
                         return activity.getString(R.string.delete_pack_not_found);
                     }
+                    trashedIdentifier = identifiers[0];
                 } else {
                     UserStickerPackStore.hidePack(activity, identifiers[0]);
                 }
-                activity.getContentResolver().notifyChange(StickerContentProvider.AUTHORITY_URI, null);
                 return null;
             } catch (Exception e) {
                 return e.getMessage();
@@ -414,12 +397,17 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
                 MessageDialogFragment.newInstance(R.string.title_validation_error, error).show(activity.getSupportFragmentManager(), "delete_pack_error");
                 return;
             }
+            if (trashedIdentifier != null) {
+                //lets the pack list offer to undo the delete.
+                activity.setResult(RESULT_OK, new Intent().putExtra(EXTRA_DELETED_STICKER_PACK_ID, trashedIdentifier));
+            }
             activity.finish();
         }
     }
 
     static class RemoveStickerAsyncTask extends AsyncTask<String, Void, String> {
         private final WeakReference<StickerPackDetailsActivity> activityReference;
+        private StickerPack updatedPack;
 
         RemoveStickerAsyncTask(StickerPackDetailsActivity activity) {
             this.activityReference = new WeakReference<>(activity);
@@ -432,8 +420,7 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
                 return "activity unavailable";
             }
             try {
-                UserStickerPackStore.removeStickerFromPack(activity, activity.stickerPack.identifier, fileNames[0]);
-                activity.getContentResolver().notifyChange(StickerContentProvider.AUTHORITY_URI, null);
+                updatedPack = UserStickerPackStore.removeStickerFromPack(activity, activity.stickerPack.identifier, fileNames[0]);
                 return null;
             } catch (Exception e) {
                 return e.getMessage();
@@ -450,7 +437,7 @@ public class StickerPackDetailsActivity extends AddStickerPackActivity {
                 MessageDialogFragment.newInstance(R.string.title_validation_error, error).show(activity.getSupportFragmentManager(), "remove_sticker_error");
                 return;
             }
-            activity.reloadCurrentPack();
+            activity.showUpdatedPack(updatedPack);
         }
     }
 }
@@ -0,0 +1,278 @@
+package com.example.samplestickerapp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//bundled and user packs laid out as the provider's cursor columns, never modified after construction so binder threads
+//share it without locking.
+final class StickerPackIndex {
+    //the string columns of the provider's pack columns, avoid_cache and animated_sticker_pack follow as ints.
+    private static final int PACK_STRING_COLUMNS = 11;
+
+    final long generation;
+    final long hiddenVersion;
+    final int packCount;
+    final int stickerCount;
+    //first sticker row of every pack row, plus stickerCount at packCount, so a range of packs maps to stickers.
+    @NonNull
+    final int[] packStickerRows;
+    //one array per pack column of the provider, one row per visible pack.
+    @NonNull
+    final Object[] packColumns;
+    //the identifier and image_data_version columns of packColumns.
+    @NonNull
+    final String[] packIdentifiers;
+    @NonNull
+    final String[] imageDataVersions;
+    //one array per column of the all stickers query, the stickers of all visible packs back to back.
+    @NonNull
+    final Object[] allStickerColumns;
+    //the same arrays without the identifier column, matching the stickers of one pack.
+    @NonNull
+    final Object[] stickerColumns;
+    @NonNull
+    final Map<String, Entry> entries;
+
+    StickerPackIndex(long generation, long hiddenVersion, @NonNull List<StickerPack> bundledPacks, @NonNull List<StickerPack> userPacks, @NonNull Set<String> hiddenPacks) {
+        this.generation = generation;
+        this.hiddenVersion = hiddenVersion;
+        final List<StickerPack> visiblePacks = new ArrayList<>(bundledPacks.size() + userPacks.size());
+        final Map<String, Entry> entries = new HashMap<>();
+        int stickerCount = 0;
+        for (StickerPack pack : bundledPacks) {
+            stickerCount += addPack(visiblePacks, entries, pack, false, hiddenPacks, stickerCount);
+        }
+        for (StickerPack pack : userPacks) {
+            stickerCount += addPack(visiblePacks, entries, pack, true, hiddenPacks, stickerCount);
+        }
+        this.packCount = visiblePacks.size();
+        this.stickerCount = stickerCount;
+        this.entries = Collections.unmodifiableMap(entries);
+
+        final String[][] packStrings = new String[PACK_STRING_COLUMNS][packCount];
+        final int[] avoidCache = new int[packCount];
+        final int[] animated = new int[packCount];
+        final String[] stickerPackIdentifiers = new String[stickerCount];
+        final String[] fileNames = new String[stickerCount];
+        final String[] emojis = new String[stickerCount];
+        final String[] accessibilityTexts = new String[stickerCount];
+        final int[] packStickerRows = new int[packCount + 1];
+        int stickerRow = 0;
+        for (int row = 0; row < packCount; row++) {
+            final StickerPack pack = visiblePacks.get(row);
+            packStickerRows[row] = stickerRow;
+            packStrings[0][row] = pack.identifier;
+            packStrings[1][row] = pack.name;
+            packStrings[2][row] = pack.publisher;
+            packStrings[3][row] = pack.trayImageFile;
+            packStrings[4][row] = pack.androidPlayStoreLink;
+            packStrings[5][row] = pack.iosAppStoreLink;
+            packStrings[6][row] = pack.publisherEmail;
+            packStrings[7][row] = pack.publisherWebsite;
+            packStrings[8][row] = pack.privacyPolicyWebsite;
+            packStrings[9][row] = pack.licenseAgreementWebsite;
+            packStrings[10][row] = pack.imageDataVersion;
+            avoidCache[row] = pack.avoidCache ? 1 : 0;
+            animated[row] = pack.animatedStickerPack ? 1 : 0;
+            for (Sticker sticker : pack.getStickers()) {
+                stickerPackIdentifiers[stickerRow] = pack.identifier;
+                fileNames[stickerRow] = sticker.imageFileName;
+                //joined once per rebuild instead of once per row of every query.
+                emojis[stickerRow] = join(sticker.emojis);
+                accessibilityTexts[stickerRow] = sticker.accessibilityText;
+                stickerRow++;
+            }
+        }
+        this.packColumns = new Object[]{packStrings[0], packStrings[1], packStrings[2], packStrings[3], packStrings[4], packStrings[5],
+                packStrings[6], packStrings[7], packStrings[8], packStrings[9], packStrings[10], avoidCache, animated};
+        packStickerRows[packCount] = stickerRow;
+        this.packStickerRows = packStickerRows;
+        this.packIdentifiers = packStrings[0];
+        this.imageDataVersions = packStrings[10];
+        this.allStickerColumns = new Object[]{stickerPackIdentifiers, fileNames, emojis, accessibilityTexts};
+        this.stickerColumns = new Object[]{fileNames, emojis, accessibilityTexts};
+    }
+
+    //right after the pack the previous page ended with if it is still there, at offset otherwise.
+    int getPageStart(@Nullable String after, int offset) {
+        final Entry entry = after != null ? entries.get(after) : null;
+        if (entry != null) {
+            return entry.packRow + 1;
+        }
+        return Math.min(Math.max(0, offset), packCount);
+    }
+
+    int getPageEnd(int start, int limit) {
+        return (int) Math.min((long) start + limit, packCount);
+    }
+
+    //changed and new packs as pack columns with a deleted column added, followed by a tombstone row for every known
+    //identifier that is no longer indexed. only the packs the caller knows are looked up, the work grows with the
+    //request rather than the index.
+    @NonNull
+    Object[] getChangedPackColumns(@NonNull Map<String, String> knownVersions, boolean includeNew) {
+        final RowList changedRows = new RowList();
+        final List<String> removed = new ArrayList<>();
+        int knownIndexed = 0;
+        for (Map.Entry<String, String> knownVersion : knownVersions.entrySet()) {
+            final Entry entry = entries.get(knownVersion.getKey());
+            if (entry == null) {
+                removed.add(knownVersion.getKey());
+                continue;
+            }
+            knownIndexed++;
+            if (!equals(imageDataVersions[entry.packRow], knownVersion.getValue())) {
+                changedRows.add(entry.packRow);
+            }
+        }
+        //if every indexed pack is known there is nothing new, so the index is only walked when something was added.
+        if (includeNew && knownIndexed < packCount) {
+            for (int row = 0; row < packCount; row++) {
+                if (!knownVersions.containsKey(packIdentifiers[row])) {
+                    changedRows.add(row);
+                }
+            }
+        }
+
+        final int changedCount = changedRows.size;
+        final int rowCount = changedCount + removed.size();
+        final Object[] columns = Arrays.copyOf(selectRows(packColumns, changedRows, removed.size()), packColumns.length + 1);
+        final String[] identifiers = (String[]) columns[0];
+        final int[] deleted = new int[rowCount];
+        for (int i = 0; i < removed.size(); i++) {
+            identifiers[changedCount + i] = removed.get(i);
+            deleted[changedCount + i] = 1;
+        }
+        columns[packColumns.length] = deleted;
+        return columns;
+    }
+
+    //copies the rows into new arrays, followed by extraRows empty rows.
+    @NonNull
+    static Object[] selectRows(@NonNull Object[] columns, @NonNull RowList rows, int extraRows) {
+        final Object[] selected = new Object[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            final Object values = columns[column];
+            if (values instanceof int[]) {
+                final int[] selectedValues = new int[rows.size + extraRows];
+                for (int i = 0; i < rows.size; i++) {
+                    selectedValues[i] = ((int[]) values)[rows.rows[i]];
+                }
+                selected[column] = selectedValues;
+            } else {
+                final String[] selectedValues = new String[rows.size + extraRows];
+                for (int i = 0; i < rows.size; i++) {
+                    selectedValues[i] = ((String[]) values)[rows.rows[i]];
+                }
+                selected[column] = selectedValues;
+            }
+        }
+        return selected;
+    }
+
+    private static int addPack(@NonNull List<StickerPack> visiblePacks, @NonNull Map<String, Entry> entries, @NonNull StickerPack pack, boolean custom, @NonNull Set<String> hiddenPacks, int firstStickerRow) {
+        if (hiddenPacks.contains(pack.identifier)) {
+            return 0;
+        }
+        //the first pack answers for a duplicate identifier, the stickers and files of the others are served with it.
+        final Entry entry = new Entry(pack, custom, visiblePacks.size(), firstStickerRow);
+        Entry existing = entries.get(pack.identifier);
+        if (existing == null) {
+            entries.put(pack.identifier, entry);
+        } else {
+            while (existing.duplicate != null) {
+                existing = existing.duplicate;
+            }
+            existing.duplicate = entry;
+        }
+        visiblePacks.add(pack);
+        return pack.getStickers().size();
+    }
+
+    private static boolean equals(@Nullable String first, @Nullable String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+
+    @NonNull
+    private static String join(@NonNull List<String> values) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(values.get(i));
+        }
+        return builder.toString();
+    }
+
+    static final class Entry {
+        @NonNull
+        final StickerPack pack;
+        //user packs are served from the store's folders, bundled ones from the apk assets.
+        final boolean custom;
+        final int packRow;
+        final int firstStickerRow;
+        final int endStickerRow;
+        //tray and sticker file names the pack may serve.
+        @NonNull
+        final Set<String> fileNames;
+        //the next pack with the same identifier, only set while the index is built.
+        @Nullable
+        Entry duplicate;
+
+        Entry(@NonNull StickerPack pack, boolean custom, int packRow, int firstStickerRow) {
+            this.pack = pack;
+            this.custom = custom;
+            this.packRow = packRow;
+            this.firstStickerRow = firstStickerRow;
+            this.endStickerRow = firstStickerRow + pack.getStickers().size();
+            final Set<String> fileNames = new HashSet<>();
+            fileNames.add(pack.trayImageFile);
+            for (Sticker sticker : pack.getStickers()) {
+                fileNames.add(sticker.imageFileName);
+            }
+            this.fileNames = Collections.unmodifiableSet(fileNames);
+        }
+
+        void addStickerRows(@NonNull RowList rows) {
+            for (Entry entry = this; entry != null; entry = entry.duplicate) {
+                for (int row = entry.firstStickerRow; row < entry.endStickerRow; row++) {
+                    rows.add(row);
+                }
+            }
+        }
+
+        //the pack of this identifier that serves the file, null if none of them does.
+        @Nullable
+        Entry findFile(@NonNull String fileName) {
+            for (Entry entry = this; entry != null; entry = entry.duplicate) {
+                if (entry.fileNames.contains(fileName)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    //a growable list of row numbers, cursors built from a selection copy only the rows it holds.
+    static final class RowList {
+        int[] rows = new int[16];
+        int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+    }
+}
@@ -8,10 +8,15 @@
 
 package com.example.samplestickerapp;
 
+import android.content.ActivityNotFoundException;
+import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.EditText;
@@ -19,27 +24,43 @@ import android.widget.LinearLayout;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.material.snackbar.Snackbar;
+
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class StickerPackListActivity extends AddStickerPackActivity {
     public static final String EXTRA_STICKER_PACK_LIST_DATA = "sticker_pack_list";
     private static final int STICKER_PREVIEW_DISPLAY_LIMIT = 5;
+    private static final int PICK_ARCHIVE_REQUEST = 302;
+    private static final int CREATE_ARCHIVE_REQUEST = 303;
+    private static final int PACK_DETAILS_REQUEST = 304;
+    private static final String EXPORT_FILE_NAME = "sticker_packs.zip";
+    static final String EXTRA_STICKER_PACK_COUNT = "sticker_pack_count";
+    //packs are loaded a page at a time as the list is scrolled, so a large library opens as fast as a small one.
+    static final int PACK_PAGE_SIZE = 20;
 
     private LinearLayoutManager packLayoutManager;
     private RecyclerView packRecyclerView;
     private StickerPackListAdapter allStickerPacksListAdapter;
     private WhiteListCheckAsyncTask whiteListCheckAsyncTask;
     private LoadPacksAsyncTask loadPacksAsyncTask;
+    private LoadPageAsyncTask loadPageAsyncTask;
+    //the pages loaded so far, in provider order.
     private ArrayList<StickerPack> stickerPackList;
+    //all visible packs, loaded or not.
+    private int stickerPackCount;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -50,6 +71,7 @@ public class StickerPackListActivity extends AddStickerPackActivity {
         if (stickerPackList == null) {
             stickerPackList = new ArrayList<>();
         }
+        stickerPackCount = getIntent().getIntExtra(EXTRA_STICKER_PACK_COUNT, stickerPackList.size());
         showStickerPackList(stickerPackList);
         updateActionBarTitle();
     }
@@ -70,6 +92,9 @@ public class StickerPackListActivity extends AddStickerPackActivity {
         if (loadPacksAsyncTask != null && !loadPacksAsyncTask.isCancelled()) {
             loadPacksAsyncTask.cancel(true);
         }
+        if (loadPageAsyncTask != null && !loadPageAsyncTask.isCancelled()) {
+            loadPageAsyncTask.cancel(true);
+        }
     }
 
     @Override
@@ -84,17 +109,89 @@ public class StickerPackListActivity extends AddStickerPackActivity {
             showCreatePackDialog();
             return true;
         }
+        if (item.getItemId() == R.id.action_import_packs) {
+            selectArchiveForImport();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_export_packs) {
+            selectArchiveForExport();
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
+    private void selectArchiveForImport() {
+        final Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("*/*");
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"application/zip", "application/octet-stream"});
+        try {
+            startActivityForResult(intent, PICK_ARCHIVE_REQUEST);
+        } catch (ActivityNotFoundException e) {
+            MessageDialogFragment.newInstance(R.string.import_packs_title, getString(R.string.file_picker_not_available)).show(getSupportFragmentManager(), "file_picker_unavailable");
+        }
+    }
+
+    private void selectArchiveForExport() {
+        final Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType("application/zip");
+        intent.putExtra(Intent.EXTRA_TITLE, EXPORT_FILE_NAME);
+        try {
+            startActivityForResult(intent, CREATE_ARCHIVE_REQUEST);
+        } catch (ActivityNotFoundException e) {
+            MessageDialogFragment.newInstance(R.string.export_packs_title, getString(R.string.file_picker_not_available)).show(getSupportFragmentManager(), "file_picker_unavailable");
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (resultCode != RESULT_OK || data == null) {
+            return;
+        }
+        if (requestCode == PACK_DETAILS_REQUEST) {
+            final String deletedIdentifier = data.getStringExtra(StickerPackDetailsActivity.EXTRA_DELETED_STICKER_PACK_ID);
+            if (deletedIdentifier != null) {
+                showUndoDelete(deletedIdentifier);
+            }
+            return;
+        }
+        if (data.getData() == null) {
+            return;
+        }
+        if (requestCode == PICK_ARCHIVE_REQUEST) {
+            new ImportArchiveAsyncTask(this).execute(data.getData());
+        } else if (requestCode == CREATE_ARCHIVE_REQUEST) {
+            new ExportArchiveAsyncTask(this).execute(data.getData());
+        }
+    }
+
+    private void showUndoDelete(@NonNull String identifier) {
+        final Context appContext = getApplicationContext();
+        Snackbar.make(packRecyclerView, R.string.delete_pack_success, Snackbar.LENGTH_LONG)
+                .setAction(R.string.delete_pack_undo, view -> new RestorePackAsyncTask(this).execute(identifier))
+                .addCallback(new Snackbar.Callback() {
+                    @Override
+                    public void onDismissed(Snackbar snackbar, int event) {
+                        //accessibility settings can keep the snackbar up for minutes, the store only purges on its
+                        //own long after that.
+                        if (event != DISMISS_EVENT_ACTION) {
+                            UserStickerPackStore.purgeDeletedPack(appContext, identifier);
+                        }
+                    }
+                })
+                .show();
+    }
+
     private void updateActionBarTitle() {
         if (getSupportActionBar() != null) {
-            getSupportActionBar().setTitle(getResources().getQuantityString(R.plurals.title_activity_sticker_packs_list, stickerPackList.size()));
+            getSupportActionBar().setTitle(getResources().getQuantityString(R.plurals.title_activity_sticker_packs_list, Math.max(stickerPackCount, stickerPackList.size())));
         }
     }
 
     private void showStickerPackList(List<StickerPack> packs) {
-        allStickerPacksListAdapter = new StickerPackListAdapter(packs, onAddButtonClickedListener);
+        allStickerPacksListAdapter = new StickerPackListAdapter(packs, onAddButtonClickedListener, onPackClickedListener, this::loadNextPage);
         packRecyclerView.setAdapter(allStickerPacksListAdapter);
         packLayoutManager = new LinearLayoutManager(this);
         packLayoutManager.setOrientation(RecyclerView.VERTICAL);
@@ -159,6 +256,17 @@ public class StickerPackListActivity extends AddStickerPackActivity {
         }
     }
 
+    private void loadNextPage() {
+        if (stickerPackList.size() >= stickerPackCount) {
+            return;
+        }
+        if (loadPageAsyncTask != null && loadPageAsyncTask.getStatus() != AsyncTask.Status.FINISHED && !loadPageAsyncTask.isCancelled()) {
+            return;
+        }
+        loadPageAsyncTask = new LoadPageAsyncTask(this);
+        loadPageAsyncTask.execute();
+    }
+
     private void refreshListAndWhitelist() {
         allStickerPacksListAdapter.setStickerPackList(stickerPackList);
         allStickerPacksListAdapter.notifyDataSetChanged();
@@ -169,6 +277,13 @@ public class StickerPackListActivity extends AddStickerPackActivity {
 
     private final StickerPackListAdapter.OnAddButtonClickedListener onAddButtonClickedListener = pack -> addStickerPackToWhatsApp(pack.identifier, pack.name);
 
+    private final StickerPackListAdapter.OnPackClickedListener onPackClickedListener = pack -> {
+        final Intent intent = new Intent(this, StickerPackDetailsActivity.class);
+        intent.putExtra(StickerPackDetailsActivity.EXTRA_SHOW_UP_BUTTON, true);
+        intent.putExtra(StickerPackDetailsActivity.EXTRA_STICKER_PACK_DATA, pack);
+        startActivityForResult(intent, PACK_DETAILS_REQUEST);
+    };
+
     static class WhiteListCheckAsyncTask extends AsyncTask<StickerPack, Void, List<StickerPack>> {
         private final WeakReference<StickerPackListActivity> stickerPackListActivityWeakReference;
 
@@ -192,7 +307,7 @@ public class StickerPackListActivity extends AddStickerPackActivity {
         protected void onPostExecute(List<StickerPack> stickerPackList) {
             final StickerPackListActivity activity = stickerPackListActivityWeakReference.get();
             if (activity != null) {
-                activity.allStickerPacksListAdapter.setStickerPackList(stickerPackList);
+                //the flags were set on the packs the adapter already shows, a newer list may have replaced this one since.
                 activity.allStickerPacksListAdapter.notifyDataSetChanged();
             }
         }
@@ -200,9 +315,15 @@ public class StickerPackListActivity extends AddStickerPackActivity {
 
     static class LoadPacksAsyncTask extends AsyncTask<Void, Void, ArrayList<StickerPack>> {
         private final WeakReference<StickerPackListActivity> activityReference;
+        //the list on screen when the task started, only the packs that changed since are fetched again.
+        private final ArrayList<StickerPack> knownPacks;
+        private final boolean allPagesLoaded;
+        private int packCount = -1;
 
         LoadPacksAsyncTask(StickerPackListActivity activity) {
             this.activityReference = new WeakReference<>(activity);
+            this.knownPacks = new ArrayList<>(activity.stickerPackList);
+            this.allPagesLoaded = activity.stickerPackList.size() >= activity.stickerPackCount;
         }
 
         @Override
@@ -212,7 +333,11 @@ public class StickerPackListActivity extends AddStickerPackActivity {
                 return new ArrayList<>();
             }
             try {
-                return StickerPackLoader.fetchStickerPacks(activity);
+                final ArrayList<StickerPack> packs = knownPacks.isEmpty()
+                        ? StickerPackLoader.fetchStickerPackPage(activity, null, 0, PACK_PAGE_SIZE)
+                        : StickerPackLoader.refreshStickerPacks(activity, knownPacks, allPagesLoaded);
+                packCount = StickerPackLoader.fetchStickerPackCount(activity);
+                return packs;
             } catch (Exception ignored) {
                 return new ArrayList<>();
             }
@@ -225,10 +350,70 @@ public class StickerPackListActivity extends AddStickerPackActivity {
                 return;
             }
             activity.stickerPackList = packs;
+            if (packCount >= 0) {
+                activity.stickerPackCount = packCount;
+            }
             activity.refreshListAndWhitelist();
         }
     }
 
+    static class LoadPageAsyncTask extends AsyncTask<Void, Void, ArrayList<StickerPack>> {
+        private final WeakReference<StickerPackListActivity> activityReference;
+        @Nullable
+        private final String afterIdentifier;
+        private final int offset;
+
+        LoadPageAsyncTask(StickerPackListActivity activity) {
+            this.activityReference = new WeakReference<>(activity);
+            final List<StickerPack> loaded = activity.stickerPackList;
+            this.afterIdentifier = loaded.isEmpty() ? null : loaded.get(loaded.size() - 1).identifier;
+            this.offset = loaded.size();
+        }
+
+        @Override
+        protected ArrayList<StickerPack> doInBackground(Void... voids) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return new ArrayList<>();
+            }
+            try {
+                final ArrayList<StickerPack> page = StickerPackLoader.fetchStickerPackPage(activity, afterIdentifier, offset, PACK_PAGE_SIZE);
+                for (StickerPack stickerPack : page) {
+                    stickerPack.setIsWhitelisted(WhitelistCheck.isWhitelisted(activity, stickerPack.identifier));
+                }
+                return page;
+            } catch (Exception e) {
+                Log.e("StickerPackListActivity", "error fetching sticker pack page", e);
+                return new ArrayList<>();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(ArrayList<StickerPack> page) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return;
+            }
+            final Set<String> loaded = new HashSet<>();
+            for (StickerPack stickerPack : activity.stickerPackList) {
+                loaded.add(stickerPack.identifier);
+            }
+            final int start = activity.stickerPackList.size();
+            for (StickerPack stickerPack : page) {
+                //a refresh may have brought in some of the page already.
+                if (loaded.add(stickerPack.identifier)) {
+                    activity.stickerPackList.add(stickerPack);
+                }
+            }
+            if (page.size() < PACK_PAGE_SIZE) {
+                //the last page, or a failed one: stop asking until the next refresh recounts.
+                activity.stickerPackCount = activity.stickerPackList.size();
+            }
+            activity.allStickerPacksListAdapter.notifyItemRangeInserted(start, activity.stickerPackList.size() - start);
+            activity.updateActionBarTitle();
+        }
+    }
+
     static class CreatePackAsyncTask extends AsyncTask<Void, Void, String> {
         private final WeakReference<StickerPackListActivity> activityReference;
         private final String name;
@@ -248,7 +433,6 @@ public class StickerPackListActivity extends AddStickerPackActivity {
             }
             try {
                 UserStickerPackStore.createPack(activity, name, publisher);
-                activity.getContentResolver().notifyChange(StickerContentProvider.AUTHORITY_URI, null);
                 return null;
             } catch (Exception e) {
                 return e.getMessage();
@@ -270,4 +454,120 @@ public class StickerPackListActivity extends AddStickerPackActivity {
             activity.loadPacksAsyncTask.execute();
         }
     }
+
+    static class RestorePackAsyncTask extends AsyncTask<String, Void, String> {
+        private final WeakReference<StickerPackListActivity> activityReference;
+
+        RestorePackAsyncTask(StickerPackListActivity activity) {
+            this.activityReference = new WeakReference<>(activity);
+        }
+
+        @Override
+        protected String doInBackground(String... identifiers) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return "activity unavailable";
+            }
+            try {
+                if (UserStickerPackStore.restorePack(activity, identifiers[0]) == null) {
+                    return activity.getString(R.string.restore_pack_expired);
+                }
+                return null;
+            } catch (Exception e) {
+                return e.getMessage();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String error) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return;
+            }
+            if (error != null) {
+                Toast.makeText(activity, activity.getString(R.string.restore_pack_error, error), Toast.LENGTH_LONG).show();
+                return;
+            }
+            activity.loadPacksAsyncTask = new LoadPacksAsyncTask(activity);
+            activity.loadPacksAsyncTask.execute();
+        }
+    }
+
+    static class ImportArchiveAsyncTask extends AsyncTask<Uri, Void, String> {
+        private final WeakReference<StickerPackListActivity> activityReference;
+        private int importedCount;
+
+        ImportArchiveAsyncTask(StickerPackListActivity activity) {
+            this.activityReference = new WeakReference<>(activity);
+        }
+
+        @Override
+        protected String doInBackground(Uri... uris) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return "activity unavailable";
+            }
+            try {
+                importedCount = UserStickerPackStore.importArchive(activity, uris[0]).size();
+                return null;
+            } catch (Exception e) {
+                return e.getMessage();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String error) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return;
+            }
+            if (error != null) {
+                Toast.makeText(activity, activity.getString(R.string.import_packs_error, error), Toast.LENGTH_LONG).show();
+                return;
+            }
+            Toast.makeText(activity, activity.getResources().getQuantityString(R.plurals.import_packs_success, importedCount, importedCount), Toast.LENGTH_SHORT).show();
+            activity.loadPacksAsyncTask = new LoadPacksAsyncTask(activity);
+            activity.loadPacksAsyncTask.execute();
+        }
+    }
+
+    static class ExportArchiveAsyncTask extends AsyncTask<Uri, Void, String> {
+        private final WeakReference<StickerPackListActivity> activityReference;
+        private UserStickerPackStore.ExportResult result;
+
+        ExportArchiveAsyncTask(StickerPackListActivity activity) {
+            this.activityReference = new WeakReference<>(activity);
+        }
+
+        @Override
+        protected String doInBackground(Uri... uris) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return "activity unavailable";
+            }
+            try {
+                result = UserStickerPackStore.exportArchive(activity, uris[0]);
+                return null;
+            } catch (Exception e) {
+                return e.getMessage();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String error) {
+            final StickerPackListActivity activity = activityReference.get();
+            if (activity == null) {
+                return;
+            }
+            if (error != null) {
+                Toast.makeText(activity, activity.getString(R.string.export_packs_error, error), Toast.LENGTH_LONG).show();
+                return;
+            }
+            String message = activity.getResources().getQuantityString(R.plurals.export_packs_success, result.exportedCount, result.exportedCount);
+            if (result.skippedCount > 0) {
+                message += " " + activity.getResources().getQuantityString(R.plurals.export_packs_skipped, result.skippedCount, result.skippedCount);
+            }
+            Toast.makeText(activity, message, Toast.LENGTH_SHORT).show();
+        }
+    }
 }
@@ -9,7 +9,6 @@
 package com.example.samplestickerapp;
 
 import android.content.Context;
-import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.text.format.Formatter;
@@ -28,16 +27,25 @@ import com.facebook.drawee.view.SimpleDraweeView;
 import java.util.List;
 
 public class StickerPackListAdapter extends RecyclerView.Adapter<StickerPackListItemViewHolder> {
+    //rows left below the bound one when the next page is asked for, so it usually arrives before the user gets there.
+    private static final int LOAD_MORE_DISTANCE = 5;
+
     @NonNull
     private List<StickerPack> stickerPacks;
     @NonNull
     private final OnAddButtonClickedListener onAddButtonClickedListener;
+    @NonNull
+    private final OnPackClickedListener onPackClickedListener;
+    @NonNull
+    private final OnEndReachedListener onEndReachedListener;
     private int maxNumberOfStickersInARow;
     private int minMarginBetweenImages;
 
-    StickerPackListAdapter(@NonNull List<StickerPack> stickerPacks, @NonNull OnAddButtonClickedListener onAddButtonClickedListener) {
+    StickerPackListAdapter(@NonNull List<StickerPack> stickerPacks, @NonNull OnAddButtonClickedListener onAddButtonClickedListener, @NonNull OnPackClickedListener onPackClickedListener, @NonNull OnEndReachedListener onEndReachedListener) {
         this.stickerPacks = stickerPacks;
         this.onAddButtonClickedListener = onAddButtonClickedListener;
+        this.onPackClickedListener = onPackClickedListener;
+        this.onEndReachedListener = onEndReachedListener;
     }
 
     @NonNull
@@ -57,18 +65,14 @@ public class StickerPackListAdapter extends RecyclerView.Adapter<StickerPackList
         viewHolder.filesizeView.setText(Formatter.formatShortFileSize(context, pack.getTotalSize()));
 
         viewHolder.titleView.setText(pack.name);
-        viewHolder.container.setOnClickListener(view -> {
-            Intent intent = new Intent(view.getContext(), StickerPackDetailsActivity.class);
-            intent.putExtra(StickerPackDetailsActivity.EXTRA_SHOW_UP_BUTTON, true);
-            intent.putExtra(StickerPackDetailsActivity.EXTRA_STICKER_PACK_DATA, pack);
-            view.getContext().startActivity(intent);
-        });
+        viewHolder.container.setOnClickListener(view -> onPackClickedListener.onPackClicked(pack));
         viewHolder.imageRowView.removeAllViews();
+        final int previewImageSize = context.getResources().getDimensionPixelSize(R.dimen.sticker_pack_list_item_preview_image_size);
         //if this sticker pack contains less stickers than the max, then take the smaller size.
         int actualNumberOfStickersToShow = Math.min(maxNumberOfStickersInARow, pack.getStickers().size());
         for (int i = 0; i < actualNumberOfStickersToShow; i++) {
             final SimpleDraweeView rowImage = (SimpleDraweeView) LayoutInflater.from(context).inflate(R.layout.sticker_packs_list_image_item, viewHolder.imageRowView, false);
-            rowImage.setImageURI(StickerPackLoader.getStickerAssetUri(pack.identifier, pack.getStickers().get(i).imageFileName));
+            rowImage.setImageURI(StickerPackLoader.getStickerThumbnailUri(pack.identifier, pack.getStickers().get(i).imageFileName, previewImageSize));
             final LinearLayout.LayoutParams lp = (LinearLayout.LayoutParams) rowImage.getLayoutParams();
             final int marginBetweenImages = minMarginBetweenImages - lp.leftMargin - lp.rightMargin;
             if (i != actualNumberOfStickersToShow - 1 && marginBetweenImages > 0) { //do not set the margin for the last image
@@ -79,6 +83,9 @@ public class StickerPackListAdapter extends RecyclerView.Adapter<StickerPackList
         }
         setAddButtonAppearance(viewHolder.addButton, pack);
         viewHolder.animatedStickerPackIndicator.setVisibility(pack.animatedStickerPack ? View.VISIBLE : View.GONE);
+        if (index >= stickerPacks.size() - LOAD_MORE_DISTANCE) {
+            onEndReachedListener.onEndReached();
+        }
     }
 
     private void setAddButtonAppearance(ImageView addButton, StickerPack pack) {
@@ -124,4 +131,12 @@ public class StickerPackListAdapter extends RecyclerView.Adapter<StickerPackList
     public interface OnAddButtonClickedListener {
         void onAddButtonClicked(StickerPack stickerPack);
     }
+
+    public interface OnPackClickedListener {
+        void onPackClicked(StickerPack stickerPack);
+    }
+
+    public interface OnEndReachedListener {
+        void onEndReached();
+    }
 }
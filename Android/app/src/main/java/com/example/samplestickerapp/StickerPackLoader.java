@@ -12,17 +12,31 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Process;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.example.samplestickerapp.StickerContentProvider.ANDROID_APP_DOWNLOAD_LINK_IN_QUERY;
 import static com.example.samplestickerapp.StickerContentProvider.ANIMATED_STICKER_PACK;
@@ -36,12 +50,17 @@ import static com.example.samplestickerapp.StickerContentProvider.PUBLISHER_WEBS
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY;
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_FILE_EMOJI_IN_QUERY;
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_FILE_NAME_IN_QUERY;
+import static com.example.samplestickerapp.StickerContentProvider.STICKER_PACK_DELETED;
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_PACK_ICON_IN_QUERY;
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_PACK_IDENTIFIER_IN_QUERY;
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_PACK_NAME_IN_QUERY;
 import static com.example.samplestickerapp.StickerContentProvider.STICKER_PACK_PUBLISHER_IN_QUERY;
 
 class StickerPackLoader {
+    private static final ExecutorService FETCH_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "StickerPackLoaderFetch"));
 
     /**
      * Get the list of sticker packs for the sticker content provider
@@ -62,16 +81,143 @@ class StickerPackLoader {
                 identifierSet.add(stickerPack.identifier);
             }
         }
-        for (StickerPack stickerPack : stickerPackList) {
-            final List<Sticker> stickers = getStickersForPack(context, stickerPack);
-            stickerPack.setStickers(stickers);
+        //one query for the stickers of every pack instead of one per pack.
+        final Map<String, List<Sticker>> stickersByPack = fetchAllStickersFromContentProvider(context.getContentResolver(), getAllStickersUri(), null);
+        setStickersForPacks(context, stickerPackList, stickersByPack);
+        return stickerPackList;
+    }
+
+    //the page starts after afterIdentifier, or at offset if that pack is gone.
+    @NonNull
+    static ArrayList<StickerPack> fetchStickerPackPage(Context context, @Nullable String afterIdentifier, int offset, int limit) throws IllegalStateException {
+        final Uri.Builder pageUri = StickerContentProvider.AUTHORITY_URI.buildUpon()
+                .appendQueryParameter(StickerContentProvider.PAGE_OFFSET, String.valueOf(offset))
+                .appendQueryParameter(StickerContentProvider.PAGE_LIMIT, String.valueOf(limit));
+        if (afterIdentifier != null) {
+            pageUri.appendQueryParameter(StickerContentProvider.PAGE_AFTER, afterIdentifier);
+        }
+        final ArrayList<StickerPack> stickerPackList;
+        try (Cursor cursor = context.getContentResolver().query(pageUri.build(), null, null, null, null)) {
+            if (cursor == null) {
+                throw new IllegalStateException("could not fetch from content provider, " + BuildConfig.CONTENT_PROVIDER_AUTHORITY);
+            }
+            stickerPackList = fetchFromContentProvider(cursor, context);
         }
+        //the stickers are asked for by the identifiers of the page, a second page query could cover other packs if the
+        //index changed in between.
+        final String[] identifiers = new String[stickerPackList.size()];
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = stickerPackList.get(i).identifier;
+        }
+        final Map<String, List<Sticker>> stickersByPack = identifiers.length == 0 ? new HashMap<>()
+                : fetchAllStickersFromContentProvider(context.getContentResolver(), getAllStickersUri(), identifiers);
+        setStickersForPacks(context, stickerPackList, stickersByPack);
         return stickerPackList;
     }
 
+    static int fetchStickerPackCount(Context context) throws IllegalStateException {
+        final String[] projection = {STICKER_PACK_IDENTIFIER_IN_QUERY};
+        try (Cursor cursor = context.getContentResolver().query(StickerContentProvider.AUTHORITY_URI, projection, null, null, null)) {
+            if (cursor == null) {
+                throw new IllegalStateException("could not fetch from content provider, " + BuildConfig.CONTENT_PROVIDER_AUTHORITY);
+            }
+            return cursor.getCount();
+        }
+    }
+
+    //only packs whose image_data_version changed are fetched again, includeNew is false for a list of the first pages.
     @NonNull
-    private static List<Sticker> getStickersForPack(Context context, StickerPack stickerPack) {
-        final List<Sticker> stickers = fetchFromContentProviderForStickers(stickerPack.identifier, context.getContentResolver());
+    static ArrayList<StickerPack> refreshStickerPacks(Context context, @NonNull List<StickerPack> knownPacks, boolean includeNew) throws IllegalStateException {
+        final String[] knownVersions = new String[knownPacks.size() * 2];
+        for (int i = 0; i < knownPacks.size(); i++) {
+            knownVersions[2 * i] = knownPacks.get(i).identifier;
+            knownVersions[2 * i + 1] = knownPacks.get(i).imageDataVersion;
+        }
+        final Map<String, StickerPack> changedPacks = new LinkedHashMap<>();
+        final Set<String> removedPacks = new HashSet<>();
+        final Uri changesUri = getMetadataChangesUri().buildUpon().appendQueryParameter(StickerContentProvider.CHANGES_INCLUDE_NEW, String.valueOf(includeNew)).build();
+        try (Cursor cursor = context.getContentResolver().query(changesUri, null, null, knownVersions, null)) {
+            if (cursor == null) {
+                throw new IllegalStateException("could not fetch from content provider, " + BuildConfig.CONTENT_PROVIDER_AUTHORITY);
+            }
+            final int deletedIndex = cursor.getColumnIndexOrThrow(STICKER_PACK_DELETED);
+            while (cursor.moveToNext()) {
+                if (cursor.getInt(deletedIndex) > 0) {
+                    removedPacks.add(cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_IDENTIFIER_IN_QUERY)));
+                    continue;
+                }
+                final StickerPack stickerPack = readStickerPack(cursor, context);
+                if (changedPacks.put(stickerPack.identifier, stickerPack) != null) {
+                    throw new IllegalStateException("sticker pack identifiers should be unique, there are more than one pack with identifier:" + stickerPack.identifier);
+                }
+            }
+        }
+        //one query for the stickers of every changed pack.
+        final Map<String, List<Sticker>> stickersByPack = changedPacks.isEmpty() ? new HashMap<>()
+                : fetchAllStickersFromContentProvider(context.getContentResolver(), getAllStickersUri(), changedPacks.keySet().toArray(new String[0]));
+        setStickersForPacks(context, new ArrayList<>(changedPacks.values()), stickersByPack);
+        final ArrayList<StickerPack> refreshed = new ArrayList<>(knownPacks.size() + changedPacks.size());
+        for (StickerPack knownPack : knownPacks) {
+            if (removedPacks.contains(knownPack.identifier)) {
+                continue;
+            }
+            final StickerPack changedPack = changedPacks.remove(knownPack.identifier);
+            refreshed.add(changedPack != null ? changedPack : knownPack);
+        }
+        refreshed.addAll(changedPacks.values());
+        return refreshed;
+    }
+
+    //bundled packs read every sticker file through the provider, so packs are filled in parallel.
+    private static void setStickersForPacks(Context context, List<StickerPack> stickerPacks, Map<String, List<Sticker>> stickersByPack) throws IllegalStateException {
+        if (stickerPacks.size() <= 1) {
+            for (StickerPack stickerPack : stickerPacks) {
+                stickerPack.setStickers(getStickersForPack(context, stickerPack, stickersByPack.get(stickerPack.identifier)));
+            }
+            return;
+        }
+        final CompletionService<List<Sticker>> completionService = new ExecutorCompletionService<>(FETCH_EXECUTOR);
+        final Map<Future<List<Sticker>>, StickerPack> packsByFuture = new HashMap<>();
+        for (StickerPack stickerPack : stickerPacks) {
+            final List<Sticker> queriedStickers = stickersByPack.get(stickerPack.identifier);
+            packsByFuture.put(completionService.submit(() -> getStickersForPack(context, stickerPack, queriedStickers)), stickerPack);
+        }
+        try {
+            //taken in completion order, so a failure surfaces as soon as it happens rather than when its turn comes.
+            for (int i = 0; i < stickerPacks.size(); i++) {
+                final Future<List<Sticker>> future = completionService.take();
+                Objects.requireNonNull(packsByFuture.get(future)).setStickers(future.get());
+            }
+        } catch (ExecutionException e) {
+            cancelAll(packsByFuture.keySet());
+            throw e.getCause() instanceof IllegalStateException ? (IllegalStateException) e.getCause() : new IllegalStateException("failed to fetch stickers", e.getCause());
+        } catch (InterruptedException e) {
+            cancelAll(packsByFuture.keySet());
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while fetching stickers", e);
+        }
+    }
+
+    private static void cancelAll(Collection<Future<List<Sticker>>> futures) {
+        for (Future<List<Sticker>> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    @NonNull
+    private static List<Sticker> getStickersForPack(Context context, StickerPack stickerPack, @Nullable List<Sticker> queriedStickers) {
+        if (stickerPack.isCustomPack()) {
+            //user packs record the size of every sticker when it is stored, there is nothing to read back.
+            final StickerPack storedPack = UserStickerPackStore.findPack(context, stickerPack.identifier);
+            if (storedPack != null && hasFileSizes(storedPack.getStickers())) {
+                final List<Sticker> stickers = new ArrayList<>(storedPack.getStickers().size());
+                for (Sticker sticker : storedPack.getStickers()) {
+                    stickers.add(sticker.copy());
+                }
+                return stickers;
+            }
+        }
+        final List<Sticker> stickers = queriedStickers != null ? queriedStickers : new ArrayList<>();
         for (Sticker sticker : stickers) {
             final byte[] bytes;
             try {
@@ -87,6 +233,14 @@ class StickerPackLoader {
         return stickers;
     }
 
+    private static boolean hasFileSizes(@NonNull List<Sticker> stickers) {
+        for (Sticker sticker : stickers) {
+            if (sticker.size <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 
     @NonNull
     private static ArrayList<StickerPack> fetchFromContentProvider(Cursor cursor, Context context) {
@@ -95,52 +249,67 @@ class StickerPackLoader {
             return stickerPackList;
         }
         do {
-            final String identifier = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_IDENTIFIER_IN_QUERY));
-            final String name = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_NAME_IN_QUERY));
-            final String publisher = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_PUBLISHER_IN_QUERY));
-            final String trayImage = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_ICON_IN_QUERY));
-            final String androidPlayStoreLink = cursor.getString(cursor.getColumnIndexOrThrow(ANDROID_APP_DOWNLOAD_LINK_IN_QUERY));
-            final String iosAppLink = cursor.getString(cursor.getColumnIndexOrThrow(IOS_APP_DOWNLOAD_LINK_IN_QUERY));
-            final String publisherEmail = cursor.getString(cursor.getColumnIndexOrThrow(PUBLISHER_EMAIL));
-            final String publisherWebsite = cursor.getString(cursor.getColumnIndexOrThrow(PUBLISHER_WEBSITE));
-            final String privacyPolicyWebsite = cursor.getString(cursor.getColumnIndexOrThrow(PRIVACY_POLICY_WEBSITE));
-            final String licenseAgreementWebsite = cursor.getString(cursor.getColumnIndexOrThrow(LICENSE_AGREEMENT_WEBSITE));
-            final String imageDataVersion = cursor.getString(cursor.getColumnIndexOrThrow(IMAGE_DATA_VERSION));
-            final boolean avoidCache = cursor.getShort(cursor.getColumnIndexOrThrow(AVOID_CACHE)) > 0;
-            final boolean animatedStickerPack = cursor.getShort(cursor.getColumnIndexOrThrow(ANIMATED_STICKER_PACK)) > 0;
-            final StickerPack stickerPack = new StickerPack(identifier, name, publisher, trayImage, publisherEmail, publisherWebsite, privacyPolicyWebsite, licenseAgreementWebsite, imageDataVersion, avoidCache, animatedStickerPack);
-            stickerPack.setCustomPack(UserStickerPackStore.isCustomPack(context, identifier));
-            stickerPack.setAndroidPlayStoreLink(androidPlayStoreLink);
-            stickerPack.setIosAppStoreLink(iosAppLink);
-            stickerPackList.add(stickerPack);
+            stickerPackList.add(readStickerPack(cursor, context));
         } while (cursor.moveToNext());
         return stickerPackList;
     }
 
     @NonNull
-    private static List<Sticker> fetchFromContentProviderForStickers(String identifier, ContentResolver contentResolver) {
-        Uri uri = getStickerListUri(identifier);
-
-        final String[] projection = {STICKER_FILE_NAME_IN_QUERY, STICKER_FILE_EMOJI_IN_QUERY, STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY};
-        final Cursor cursor = contentResolver.query(uri, projection, null, null, null);
-        List<Sticker> stickers = new ArrayList<>();
-        if (cursor != null && cursor.getCount() > 0) {
-            cursor.moveToFirst();
-            do {
-                final String name = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_FILE_NAME_IN_QUERY));
-                final String emojisConcatenated = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_FILE_EMOJI_IN_QUERY));
-                final String accessibilityText = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY));
-                List<String> emojis = new ArrayList<>(StickerPackValidator.EMOJI_MAX_LIMIT);
-                if (!TextUtils.isEmpty(emojisConcatenated)) {
-                    emojis = Arrays.asList(emojisConcatenated.split(","));
+    private static StickerPack readStickerPack(Cursor cursor, Context context) {
+        final String identifier = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_IDENTIFIER_IN_QUERY));
+        final String name = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_NAME_IN_QUERY));
+        final String publisher = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_PUBLISHER_IN_QUERY));
+        final String trayImage = cursor.getString(cursor.getColumnIndexOrThrow(STICKER_PACK_ICON_IN_QUERY));
+        final String androidPlayStoreLink = cursor.getString(cursor.getColumnIndexOrThrow(ANDROID_APP_DOWNLOAD_LINK_IN_QUERY));
+        final String iosAppLink = cursor.getString(cursor.getColumnIndexOrThrow(IOS_APP_DOWNLOAD_LINK_IN_QUERY));
+        final String publisherEmail = cursor.getString(cursor.getColumnIndexOrThrow(PUBLISHER_EMAIL));
+        final String publisherWebsite = cursor.getString(cursor.getColumnIndexOrThrow(PUBLISHER_WEBSITE));
+        final String privacyPolicyWebsite = cursor.getString(cursor.getColumnIndexOrThrow(PRIVACY_POLICY_WEBSITE));
+        final String licenseAgreementWebsite = cursor.getString(cursor.getColumnIndexOrThrow(LICENSE_AGREEMENT_WEBSITE));
+        final String imageDataVersion = cursor.getString(cursor.getColumnIndexOrThrow(IMAGE_DATA_VERSION));
+        final boolean avoidCache = cursor.getShort(cursor.getColumnIndexOrThrow(AVOID_CACHE)) > 0;
+        final boolean animatedStickerPack = cursor.getShort(cursor.getColumnIndexOrThrow(ANIMATED_STICKER_PACK)) > 0;
+        final StickerPack stickerPack = new StickerPack(identifier, name, publisher, trayImage, publisherEmail, publisherWebsite, privacyPolicyWebsite, licenseAgreementWebsite, imageDataVersion, avoidCache, animatedStickerPack);
+        stickerPack.setCustomPack(UserStickerPackStore.isCustomPack(context, identifier));
+        stickerPack.setAndroidPlayStoreLink(androidPlayStoreLink);
+        stickerPack.setIosAppStoreLink(iosAppLink);
+        return stickerPack;
+    }
+
+    //identifiers narrow the query to those packs, null fetches every pack the uri covers.
+    @NonNull
+    private static Map<String, List<Sticker>> fetchAllStickersFromContentProvider(ContentResolver contentResolver, Uri allStickersUri, @Nullable String[] identifiers) {
+        final String[] projection = {STICKER_PACK_IDENTIFIER_IN_QUERY, STICKER_FILE_NAME_IN_QUERY, STICKER_FILE_EMOJI_IN_QUERY, STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY};
+        final Map<String, List<Sticker>> stickersByPack = new HashMap<>();
+        try (Cursor cursor = contentResolver.query(allStickersUri, projection, null, identifiers, null)) {
+            if (cursor == null) {
+                throw new IllegalStateException("could not fetch stickers from content provider, " + BuildConfig.CONTENT_PROVIDER_AUTHORITY);
+            }
+            final int identifierIndex = cursor.getColumnIndexOrThrow(STICKER_PACK_IDENTIFIER_IN_QUERY);
+            final int nameIndex = cursor.getColumnIndexOrThrow(STICKER_FILE_NAME_IN_QUERY);
+            final int emojiIndex = cursor.getColumnIndexOrThrow(STICKER_FILE_EMOJI_IN_QUERY);
+            final int accessibilityTextIndex = cursor.getColumnIndexOrThrow(STICKER_FILE_ACCESSIBILITY_TEXT_IN_QUERY);
+            while (cursor.moveToNext()) {
+                final String identifier = cursor.getString(identifierIndex);
+                List<Sticker> stickers = stickersByPack.get(identifier);
+                if (stickers == null) {
+                    stickers = new ArrayList<>();
+                    stickersByPack.put(identifier, stickers);
                 }
-                stickers.add(new Sticker(name, emojis, accessibilityText));
-            } while (cursor.moveToNext());
+                stickers.add(readSticker(cursor, nameIndex, emojiIndex, accessibilityTextIndex));
+            }
         }
-        if (cursor != null) {
-            cursor.close();
+        return stickersByPack;
+    }
+
+    @NonNull
+    private static Sticker readSticker(Cursor cursor, int nameIndex, int emojiIndex, int accessibilityTextIndex) {
+        final String emojisConcatenated = cursor.getString(emojiIndex);
+        List<String> emojis = new ArrayList<>(StickerPackValidator.EMOJI_MAX_LIMIT);
+        if (!TextUtils.isEmpty(emojisConcatenated)) {
+            emojis = Arrays.asList(emojisConcatenated.split(","));
         }
-        return stickers;
+        return new Sticker(cursor.getString(nameIndex), emojis, cursor.getString(accessibilityTextIndex));
     }
 
     static byte[] fetchStickerAsset(@NonNull final String identifier, @NonNull final String name, ContentResolver contentResolver) throws IOException {
@@ -159,11 +328,20 @@ class StickerPackLoader {
         }
     }
 
-    private static Uri getStickerListUri(String identifier) {
-        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY).appendPath(StickerContentProvider.STICKERS).appendPath(identifier).build();
+    private static Uri getMetadataChangesUri() {
+        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY).appendPath(StickerContentProvider.METADATA_CHANGES).build();
+    }
+
+    private static Uri getAllStickersUri() {
+        return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY).appendPath(StickerContentProvider.ALL_STICKERS).build();
     }
 
     static Uri getStickerAssetUri(String identifier, String stickerName) {
         return new Uri.Builder().scheme(ContentResolver.SCHEME_CONTENT).authority(BuildConfig.CONTENT_PROVIDER_AUTHORITY).appendPath(StickerContentProvider.STICKERS_ASSET).appendPath(identifier).appendPath(stickerName).build();
     }
+
+    //only for showing inside the app, WhatsApp always gets the full file.
+    static Uri getStickerThumbnailUri(String identifier, String stickerName, int sizePx) {
+        return getStickerAssetUri(identifier, stickerName).buildUpon().appendQueryParameter(StickerContentProvider.THUMBNAIL_SIZE, String.valueOf(sizePx)).build();
+    }
 }
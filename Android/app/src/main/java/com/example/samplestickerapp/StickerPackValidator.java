@@ -138,6 +138,12 @@ class StickerPackValidator {
         if (isInvalidAccessibilityText(accessibilityText, animatedStickerPack)) {
             throw new IllegalStateException("accessibility text length exceed limit, sticker pack identifier: " + identifier + ", filename: " + sticker.imageFileName);
         }
+        if (sticker.hasImageInfo()) {
+            //user stickers are measured when they are stored, so the file does not have to be fetched and decoded.
+            checkStickerImage(identifier, sticker.imageFileName, animatedStickerPack, sticker.size, sticker.width, sticker.height,
+                    sticker.frameCount, sticker.minFrameDuration, sticker.duration);
+            return;
+        }
         validateStickerFile(context, identifier, sticker.imageFileName, animatedStickerPack);
     }
 
@@ -152,31 +158,15 @@ class StickerPackValidator {
     private static void validateStickerFile(@NonNull Context context, @NonNull String identifier, @NonNull final String fileName, final boolean animatedStickerPack) throws IllegalStateException {
         try {
             final byte[] stickerInBytes = StickerPackLoader.fetchStickerAsset(identifier, fileName, context.getContentResolver());
-            if (!animatedStickerPack && stickerInBytes.length > STATIC_STICKER_FILE_LIMIT_KB * KB_IN_BYTES) {
-                throw new IllegalStateException("static sticker should be less than " + STATIC_STICKER_FILE_LIMIT_KB + "KB, current file is " + stickerInBytes.length / KB_IN_BYTES + " KB, sticker pack identifier: " + identifier + ", filename: " + fileName);
-            }
-            if (animatedStickerPack && stickerInBytes.length > ANIMATED_STICKER_FILE_LIMIT_KB * KB_IN_BYTES) {
-                throw new IllegalStateException("animated sticker should be less than " + ANIMATED_STICKER_FILE_LIMIT_KB + "KB, current file is " + stickerInBytes.length / KB_IN_BYTES + " KB, sticker pack identifier: " + identifier + ", filename: " + fileName);
-            }
+            checkStickerFileSize(identifier, fileName, animatedStickerPack, stickerInBytes.length);
             try {
                 final WebPImage webPImage = WebPImage.createFromByteArray(stickerInBytes, ImageDecodeOptions.defaults());
-                if (webPImage.getHeight() != IMAGE_HEIGHT) {
-                    throw new IllegalStateException("sticker height should be " + IMAGE_HEIGHT + ", current height is " + webPImage.getHeight() + ", sticker pack identifier: " + identifier + ", filename: " + fileName);
-                }
-                if (webPImage.getWidth() != IMAGE_WIDTH) {
-                    throw new IllegalStateException("sticker width should be " + IMAGE_WIDTH + ", current width is " + webPImage.getWidth() + ", sticker pack identifier: " + identifier + ", filename: " + fileName);
-                }
-                if (animatedStickerPack) {
-                    if (webPImage.getFrameCount() <= 1) {
-                        throw new IllegalStateException("this pack is marked as animated sticker pack, all stickers should animate, sticker pack identifier: " + identifier + ", filename: " + fileName);
-                    }
-                    checkFrameDurationsForAnimatedSticker(webPImage.getFrameDurations(), identifier, fileName);
-                    if (webPImage.getDuration() > ANIMATED_STICKER_TOTAL_DURATION_MAX) {
-                        throw new IllegalStateException("sticker animation max duration is: " + ANIMATED_STICKER_TOTAL_DURATION_MAX + " ms, current duration is: " + webPImage.getDuration() + " ms, sticker pack identifier: " + identifier + ", filename: " + fileName);
-                    }
-                } else if (webPImage.getFrameCount() > 1) {
-                    throw new IllegalStateException("this pack is not marked as animated sticker pack, all stickers should be static stickers, sticker pack identifier: " + identifier + ", filename: " + fileName);
+                int minFrameDuration = Integer.MAX_VALUE;
+                for (int frameDuration : webPImage.getFrameDurations()) {
+                    minFrameDuration = Math.min(minFrameDuration, frameDuration);
                 }
+                checkStickerImage(identifier, fileName, animatedStickerPack, stickerInBytes.length, webPImage.getWidth(), webPImage.getHeight(),
+                        webPImage.getFrameCount(), minFrameDuration, webPImage.getDuration());
             } catch (IllegalArgumentException e) {
                 throw new IllegalStateException("Error parsing webp image, sticker pack identifier: " + identifier + ", filename: " + fileName, e);
             }
@@ -185,11 +175,36 @@ class StickerPackValidator {
         }
     }
 
-    private static void checkFrameDurationsForAnimatedSticker(@NonNull final int[] frameDurations, @NonNull final String identifier, @NonNull final String fileName) {
-        for (int frameDuration : frameDurations) {
-            if (frameDuration < ANIMATED_STICKER_FRAME_DURATION_MIN) {
+    private static void checkStickerFileSize(@NonNull String identifier, @NonNull String fileName, boolean animatedStickerPack, long size) throws IllegalStateException {
+        if (!animatedStickerPack && size > STATIC_STICKER_FILE_LIMIT_KB * KB_IN_BYTES) {
+            throw new IllegalStateException("static sticker should be less than " + STATIC_STICKER_FILE_LIMIT_KB + "KB, current file is " + size / KB_IN_BYTES + " KB, sticker pack identifier: " + identifier + ", filename: " + fileName);
+        }
+        if (animatedStickerPack && size > ANIMATED_STICKER_FILE_LIMIT_KB * KB_IN_BYTES) {
+            throw new IllegalStateException("animated sticker should be less than " + ANIMATED_STICKER_FILE_LIMIT_KB + "KB, current file is " + size / KB_IN_BYTES + " KB, sticker pack identifier: " + identifier + ", filename: " + fileName);
+        }
+    }
+
+    private static void checkStickerImage(@NonNull String identifier, @NonNull String fileName, boolean animatedStickerPack, long size, int width, int height,
+                                          int frameCount, int minFrameDuration, int duration) throws IllegalStateException {
+        checkStickerFileSize(identifier, fileName, animatedStickerPack, size);
+        if (height != IMAGE_HEIGHT) {
+            throw new IllegalStateException("sticker height should be " + IMAGE_HEIGHT + ", current height is " + height + ", sticker pack identifier: " + identifier + ", filename: " + fileName);
+        }
+        if (width != IMAGE_WIDTH) {
+            throw new IllegalStateException("sticker width should be " + IMAGE_WIDTH + ", current width is " + width + ", sticker pack identifier: " + identifier + ", filename: " + fileName);
+        }
+        if (animatedStickerPack) {
+            if (frameCount <= 1) {
+                throw new IllegalStateException("this pack is marked as animated sticker pack, all stickers should animate, sticker pack identifier: " + identifier + ", filename: " + fileName);
+            }
+            if (minFrameDuration < ANIMATED_STICKER_FRAME_DURATION_MIN) {
                 throw new IllegalStateException("animated sticker frame duration limit is " + ANIMATED_STICKER_FRAME_DURATION_MIN + ", sticker pack identifier: " + identifier + ", filename: " + fileName);
             }
+            if (duration > ANIMATED_STICKER_TOTAL_DURATION_MAX) {
+                throw new IllegalStateException("sticker animation max duration is: " + ANIMATED_STICKER_TOTAL_DURATION_MAX + " ms, current duration is: " + duration + " ms, sticker pack identifier: " + identifier + ", filename: " + fileName);
+            }
+        } else if (frameCount > 1) {
+            throw new IllegalStateException("this pack is not marked as animated sticker pack, all stickers should be static stickers, sticker pack identifier: " + identifier + ", filename: " + fileName);
         }
     }
 
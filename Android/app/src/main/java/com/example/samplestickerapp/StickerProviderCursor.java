@@ -0,0 +1,162 @@
+package com.example.samplestickerapp;
+
+import android.database.AbstractCursor;
+import android.database.CursorWindow;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//serves the provider's column arrays as they are, rows are never copied or boxed.
+final class StickerProviderCursor extends AbstractCursor {
+    @NonNull
+    private final String[] columnNames;
+    @NonNull
+    private final Object[] columns;
+    private final int start;
+    private final int count;
+
+    StickerProviderCursor(@NonNull String[] allColumnNames, @NonNull Object[] allColumns, int start, int end, @Nullable String[] projection) {
+        if (projection == null) {
+            this.columnNames = allColumnNames;
+            this.columns = allColumns;
+        } else {
+            //columns this version does not have are left out rather than failing the query, clients like WhatsApp may
+            //ask for ones added later.
+            final List<String> names = new ArrayList<>(projection.length);
+            final List<Object> values = new ArrayList<>(projection.length);
+            for (String name : projection) {
+                final int index = indexOf(allColumnNames, name);
+                if (index >= 0) {
+                    names.add(name);
+                    values.add(allColumns[index]);
+                }
+            }
+            this.columnNames = names.toArray(new String[0]);
+            this.columns = values.toArray();
+        }
+        this.start = start;
+        this.count = end - start;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        final Object values = columns[column];
+        if (values instanceof int[]) {
+            return Integer.toString(((int[]) values)[getRow()]);
+        }
+        return ((String[]) values)[getRow()];
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        final Object values = columns[column];
+        if (values instanceof int[]) {
+            return ((int[]) values)[getRow()];
+        }
+        final String value = ((String[]) values)[getRow()];
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public int getType(int column) {
+        final Object values = columns[column];
+        if (values instanceof int[]) {
+            return FIELD_TYPE_INTEGER;
+        }
+        return ((String[]) values)[getRow()] == null ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getType(column) == FIELD_TYPE_NULL;
+    }
+
+    //rows go straight from the column arrays into the window, without moving the cursor.
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        if (position < 0 || position >= count) {
+            return;
+        }
+        window.acquireReference();
+        try {
+            window.clear();
+            window.setStartPosition(position);
+            window.setNumColumns(columns.length);
+            for (int row = position; row < count; row++) {
+                if (!window.allocRow()) {
+                    break;
+                }
+                if (!putRow(window, row)) {
+                    window.freeLastRow();
+                    break;
+                }
+            }
+        } finally {
+            window.releaseReference();
+        }
+    }
+
+    private boolean putRow(@NonNull CursorWindow window, int row) {
+        for (int column = 0; column < columns.length; column++) {
+            final Object values = columns[column];
+            final boolean success;
+            if (values instanceof int[]) {
+                success = window.putLong(((int[]) values)[start + row], row, column);
+            } else {
+                final String value = ((String[]) values)[start + row];
+                success = value == null ? window.putNull(row, column) : window.putString(value, row, column);
+            }
+            if (!success) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int getRow() {
+        checkPosition();
+        return start + getPosition();
+    }
+
+    private static int indexOf(@NonNull String[] columnNames, @NonNull String name) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if (columnNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.samplestickerapp;
+
+import androidx.annotation.NonNull;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//atomic counters so binder threads record without contending on a lock, latencies go in power of two microsecond
+//buckets.
+final class StickerProviderMetrics {
+    static final String[] COLUMNS = {"name", "calls", "errors", "p50_us", "p95_us", "p99_us", "bytes", "hits", "misses"};
+    //one slot per uri match code, slot 0 collects uris that did not match.
+    static final int SLOT_COUNT = 8;
+    //bucket i holds latencies below 2^i microseconds, the last one everything slower.
+    static final int BUCKET_COUNT = 25;
+
+    private static final AtomicLongArray CALLS = new AtomicLongArray(SLOT_COUNT);
+    private static final AtomicLongArray ERRORS = new AtomicLongArray(SLOT_COUNT);
+    private static final AtomicLongArray BYTES = new AtomicLongArray(SLOT_COUNT);
+    private static final AtomicLongArray LATENCY_BUCKETS = new AtomicLongArray(SLOT_COUNT * BUCKET_COUNT);
+    private static final AtomicLong PACK_INDEX_HITS = new AtomicLong();
+    private static final AtomicLong PACK_INDEX_MISSES = new AtomicLong();
+    private static final AtomicLong THUMBNAIL_HITS = new AtomicLong();
+    private static final AtomicLong THUMBNAIL_MISSES = new AtomicLong();
+
+    private StickerProviderMetrics() {
+    }
+
+    static void recordCall(int code, long elapsedNanos, boolean failed) {
+        final int slot = toSlot(code);
+        CALLS.incrementAndGet(slot);
+        if (failed) {
+            ERRORS.incrementAndGet(slot);
+        }
+        LATENCY_BUCKETS.incrementAndGet(slot * BUCKET_COUNT + toBucket(elapsedNanos));
+    }
+
+    static int toBucket(long elapsedNanos) {
+        final long micros = Math.max(0, elapsedNanos / 1000);
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    static void recordBytes(int code, long bytes) {
+        if (bytes > 0) {
+            BYTES.addAndGet(toSlot(code), bytes);
+        }
+    }
+
+    static void recordPackIndexLookup(boolean hit) {
+        (hit ? PACK_INDEX_HITS : PACK_INDEX_MISSES).incrementAndGet();
+    }
+
+    static void recordThumbnailLookup(boolean hit) {
+        (hit ? THUMBNAIL_HITS : THUMBNAIL_MISSES).incrementAndGet();
+    }
+
+    //counters are read one by one, a row may mix values from before and after a concurrent call.
+    @NonNull
+    static List<Object[]> getRows(@NonNull String[] slotNames) {
+        final List<Object[]> rows = new ArrayList<>();
+        for (int slot = 0; slot < SLOT_COUNT; slot++) {
+            final long calls = CALLS.get(slot);
+            if (calls == 0) {
+                continue;
+            }
+            final String name = slot < slotNames.length ? slotNames[slot] : String.valueOf(slot);
+            final long[] buckets = new long[BUCKET_COUNT];
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets[bucket] = LATENCY_BUCKETS.get(slot * BUCKET_COUNT + bucket);
+            }
+            rows.add(new Object[]{name, calls, ERRORS.get(slot), getPercentileMicros(buckets, 0.50), getPercentileMicros(buckets, 0.95),
+                    getPercentileMicros(buckets, 0.99), BYTES.get(slot), 0L, 0L});
+        }
+        rows.add(getCacheRow("pack_index_cache", PACK_INDEX_HITS.get(), PACK_INDEX_MISSES.get()));
+        rows.add(getCacheRow("thumbnail_cache", THUMBNAIL_HITS.get(), THUMBNAIL_MISSES.get()));
+        return rows;
+    }
+
+    static void dump(@NonNull PrintWriter writer, @NonNull String[] slotNames) {
+        writer.println("StickerContentProvider metrics:");
+        writer.println("  " + join(COLUMNS));
+        for (Object[] row : getRows(slotNames)) {
+            writer.println("  " + join(row));
+        }
+    }
+
+    @NonNull
+    private static Object[] getCacheRow(@NonNull String name, long hits, long misses) {
+        return new Object[]{name, hits + misses, 0L, 0L, 0L, 0L, 0L, hits, misses};
+    }
+
+    //the upper bound of the bucket the percentile falls in, the three percentiles of a row read the same counts.
+    static long getPercentileMicros(@NonNull long[] buckets, double fraction) {
+        long total = 0;
+        for (long count : buckets) {
+            total += count;
+        }
+        final long target = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < buckets.length; bucket++) {
+            seen += buckets[bucket];
+            if (seen >= target) {
+                return 1L << bucket;
+            }
+        }
+        return 1L << (buckets.length - 1);
+    }
+
+    private static int toSlot(int code) {
+        return code > 0 && code < SLOT_COUNT ? code : 0;
+    }
+
+    @NonNull
+    private static String join(@NonNull Object[] values) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                builder.append('\t');
+            }
+            builder.append(values[i]);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.samplestickerapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.UUID;
+
+//renditions live under the pack's image_data_version, so an edited pack never serves a stale one.
+final class StickerThumbnailCache {
+    private static final String THUMBNAILS_FOLDER = "sticker_thumbnails";
+    private static final int STICKER_SIZE_PX = 512;
+    //requested sizes are rounded up to a step, so different densities and cells share renditions.
+    private static final int SIZE_STEP_PX = 64;
+    private static final int THUMBNAIL_QUALITY = 80;
+
+    interface Source {
+        @NonNull
+        InputStream open() throws IOException;
+    }
+
+    private StickerThumbnailCache() {
+    }
+
+    //0 if only the full sticker is big enough.
+    static int getRenditionSize(int requestedSize) {
+        if (requestedSize <= 0) {
+            return 0;
+        }
+        final int size = (requestedSize + SIZE_STEP_PX - 1) / SIZE_STEP_PX * SIZE_STEP_PX;
+        return size < STICKER_SIZE_PX ? size : 0;
+    }
+
+    //null if the source cannot be decoded as a still image.
+    @Nullable
+    static File getThumbnail(@NonNull Context context, @NonNull String identifier, @NonNull String imageDataVersion, @NonNull String fileName, int size, @NonNull Source source) throws IOException {
+        final File packDir = new File(new File(context.getCacheDir(), THUMBNAILS_FOLDER), identifier);
+        final File versionDir = new File(packDir, Uri.encode(imageDataVersion));
+        final File thumbnail = new File(versionDir, size + "_" + fileName);
+        if (thumbnail.exists()) {
+            StickerProviderMetrics.recordThumbnailLookup(true);
+            return thumbnail;
+        }
+        StickerProviderMetrics.recordThumbnailLookup(false);
+        if (!versionDir.isDirectory()) {
+            deleteOtherVersions(packDir, versionDir.getName());
+            if (!versionDir.mkdirs() && !versionDir.isDirectory()) {
+                throw new IOException("cannot create thumbnail folder for pack: " + identifier);
+            }
+        }
+        //written under a unique name and renamed, concurrent requests for the same rendition each produce a whole file.
+        final File tempFile = new File(versionDir, UUID.randomUUID().toString() + ".tmp");
+        try {
+            if (!createThumbnailWebp(source, size, tempFile)) {
+                return null;
+            }
+            if (!tempFile.renameTo(thumbnail) && !thumbnail.exists()) {
+                throw new IOException("cannot store thumbnail: " + thumbnail.getName());
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+        return thumbnail;
+    }
+
+    private static boolean createThumbnailWebp(@NonNull Source source, int size, @NonNull File target) throws IOException {
+        //bounds and pixels are decoded straight from the source, the full sticker is never buffered.
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream inputStream = source.open()) {
+            BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        final int shortestSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shortestSide / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        //animated stickers decode to their first frame, which is what the grid shows anyway.
+        final Bitmap decoded;
+        try (InputStream inputStream = source.open()) {
+            decoded = BitmapFactory.decodeStream(inputStream, null, options);
+        }
+        if (decoded == null) {
+            return false;
+        }
+        final Bitmap scaled = decoded.getWidth() == size && decoded.getHeight() == size ? decoded : Bitmap.createScaledBitmap(decoded, size, size, true);
+        try (FileOutputStream outputStream = new FileOutputStream(target)) {
+            if (!scaled.compress(Bitmap.CompressFormat.WEBP, THUMBNAIL_QUALITY, outputStream)) {
+                throw new IOException("could not encode thumbnail to webp");
+            }
+        } finally {
+            if (scaled != decoded) {
+                scaled.recycle();
+            }
+            decoded.recycle();
+        }
+        return true;
+    }
+
+    private static void deleteOtherVersions(@NonNull File packDir, @NonNull String currentVersion) {
+        final File[] versionDirs = packDir.listFiles();
+        if (versionDirs == null) {
+            return;
+        }
+        for (File versionDir : versionDirs) {
+            if (versionDir.getName().equals(currentVersion)) {
+                continue;
+            }
+            final File[] thumbnails = versionDir.listFiles();
+            if (thumbnails != null) {
+                for (File thumbnail : thumbnails) {
+                    //noinspection ResultOfMethodCallIgnored
+                    thumbnail.delete();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            versionDir.delete();
+        }
+    }
+}
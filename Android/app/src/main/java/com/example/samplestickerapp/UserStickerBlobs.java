@@ -0,0 +1,127 @@
+package com.example.samplestickerapp;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+//named after the SHA-256 of their bytes, so an image used by several packs is stored once.
+final class UserStickerBlobs {
+    static final String BLOBS_FOLDER = "blobs";
+    static final String TEMP_SUFFIX = ".tmp";
+    private static final String BLOB_EXTENSION = ".webp";
+    private static final int HASH_HEX_LENGTH = 64;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private UserStickerBlobs() {
+    }
+
+    static final class StagedBlob {
+        @NonNull
+        final String fileName;
+        @NonNull
+        final File file;
+        final long size;
+        @Nullable
+        final StickerImageInfo info;
+
+        StagedBlob(@NonNull String fileName, @NonNull File file) throws IOException {
+            this.fileName = fileName;
+            this.file = file;
+            this.size = file.length();
+            this.info = StickerImageInfo.read(file);
+        }
+    }
+
+    static boolean isBlobName(@NonNull String fileName) {
+        if (fileName.length() != HASH_HEX_LENGTH + BLOB_EXTENSION.length() || !fileName.endsWith(BLOB_EXTENSION)) {
+            return false;
+        }
+        for (int i = 0; i < HASH_HEX_LENGTH; i++) {
+            final char c = fileName.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NonNull
+    static String getHash(@NonNull String blobName) {
+        return blobName.substring(0, HASH_HEX_LENGTH);
+    }
+
+    @NonNull
+    static StagedBlob stage(@NonNull File blobsDir, @NonNull byte[] bytes) throws IOException {
+        final MessageDigest digest = newDigest();
+        digest.update(bytes);
+        final File file = File.createTempFile("blob", TEMP_SUFFIX, blobsDir);
+        try (FileOutputStream outputStream = new FileOutputStream(file, false)) {
+            outputStream.write(bytes);
+            outputStream.flush();
+            outputStream.getFD().sync();
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+        try {
+            return new StagedBlob(toHex(digest.digest()) + BLOB_EXTENSION, file);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            throw e;
+        }
+    }
+
+    //the file is moved into place as it is, not copied.
+    @NonNull
+    static StagedBlob stage(@NonNull File file) throws IOException {
+        final MessageDigest digest = newDigest();
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return new StagedBlob(toHex(digest.digest()) + BLOB_EXTENSION, file);
+    }
+
+    //drops the staged file if a blob with the same content already exists, returns whether a new blob was added.
+    static boolean place(@NonNull File blobsDir, @NonNull StagedBlob staged) throws IOException {
+        final File target = new File(blobsDir, staged.fileName);
+        if (target.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            staged.file.delete();
+            return false;
+        }
+        if (!staged.file.renameTo(target)) {
+            throw new IOException("failed to store sticker file");
+        }
+        return true;
+    }
+
+    @NonNull
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("sha-256 is not available", e);
+        }
+    }
+
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.samplestickerapp;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+//one json record per line, the sequence number tells which ones are already in the snapshot.
+final class UserStickerPackJournal {
+    static final String FIELD_SEQ = "seq";
+    private static final String FIELD_OP = "op";
+    private static final String FIELD_PACK = "pack";
+    private static final String FIELD_IDENTIFIER = "identifier";
+    private static final String OP_PUT = "put";
+    private static final String OP_DELETE = "delete";
+
+    private UserStickerPackJournal() {
+    }
+
+    @NonNull
+    static JSONObject putRecord(long seq, @NonNull JSONObject pack) throws IOException {
+        try {
+            final JSONObject record = new JSONObject();
+            record.put(FIELD_SEQ, seq);
+            record.put(FIELD_OP, OP_PUT);
+            record.put(FIELD_PACK, pack);
+            return record;
+        } catch (JSONException e) {
+            throw new IOException("failed to build journal record", e);
+        }
+    }
+
+    @NonNull
+    static JSONObject deleteRecord(long seq, @NonNull String identifier) throws IOException {
+        try {
+            final JSONObject record = new JSONObject();
+            record.put(FIELD_SEQ, seq);
+            record.put(FIELD_OP, OP_DELETE);
+            record.put(FIELD_IDENTIFIER, identifier);
+            return record;
+        } catch (JSONException e) {
+            throw new IOException("failed to build journal record", e);
+        }
+    }
+
+    //not durable until sync returns.
+    static void append(@NonNull File journalFile, @NonNull List<JSONObject> records) throws IOException {
+        write(journalFile, records, endsWithTornRecord(journalFile), false);
+    }
+
+    static void sync(@NonNull File journalFile) throws IOException {
+        try (FileOutputStream outputStream = new FileOutputStream(journalFile, true)) {
+            outputStream.getFD().sync();
+        }
+    }
+
+    //returns the last sequence number applied, snapshotSeq if there was none.
+    static long fold(@NonNull File journalFile, @NonNull JSONObject root, long snapshotSeq) throws IOException {
+        final JSONArray packs = root.optJSONArray("sticker_packs");
+        if (packs == null) {
+            throw new IOException("invalid metadata");
+        }
+        final Set<String> snapshotIdentifiers = new HashSet<>();
+        for (int i = 0; i < packs.length(); i++) {
+            final JSONObject pack = packs.optJSONObject(i);
+            if (pack != null) {
+                snapshotIdentifiers.add(pack.optString(FIELD_IDENTIFIER));
+            }
+        }
+
+        //packs of the snapshot keep their position, packs created by the journal are appended in creation order.
+        final Map<String, JSONObject> replaced = new HashMap<>();
+        final Set<String> removed = new HashSet<>();
+        final Map<String, JSONObject> appended = new LinkedHashMap<>();
+        long lastSeq = snapshotSeq;
+        for (JSONObject record : readRecords(journalFile)) {
+            final long seq = record.optLong(FIELD_SEQ);
+            if (seq <= snapshotSeq) {
+                continue;
+            }
+            final String op = record.optString(FIELD_OP);
+            if (OP_PUT.equals(op)) {
+                final JSONObject pack = record.optJSONObject(FIELD_PACK);
+                if (pack != null) {
+                    final String identifier = pack.optString(FIELD_IDENTIFIER);
+                    if (snapshotIdentifiers.contains(identifier) && !removed.contains(identifier)) {
+                        replaced.put(identifier, pack);
+                    } else {
+                        appended.put(identifier, pack);
+                    }
+                }
+            } else if (OP_DELETE.equals(op)) {
+                final String identifier = record.optString(FIELD_IDENTIFIER);
+                if (appended.remove(identifier) == null && snapshotIdentifiers.contains(identifier)) {
+                    removed.add(identifier);
+                    replaced.remove(identifier);
+                }
+            }
+            lastSeq = Math.max(lastSeq, seq);
+        }
+        if (lastSeq == snapshotSeq) {
+            return lastSeq;
+        }
+
+        final JSONArray folded = new JSONArray();
+        for (int i = 0; i < packs.length(); i++) {
+            final JSONObject pack = packs.optJSONObject(i);
+            if (pack == null) {
+                continue;
+            }
+            final String identifier = pack.optString(FIELD_IDENTIFIER);
+            if (!removed.contains(identifier)) {
+                final JSONObject replacement = replaced.get(identifier);
+                folded.put(replacement != null ? replacement : pack);
+            }
+        }
+        for (JSONObject pack : appended.values()) {
+            folded.put(pack);
+        }
+        try {
+            root.put("sticker_packs", folded);
+        } catch (JSONException e) {
+            throw new IOException("failed to apply journal records", e);
+        }
+        return lastSeq;
+    }
+
+    static void trim(@NonNull File journalFile, long compactedSeq) throws IOException {
+        final List<JSONObject> remaining = new ArrayList<>();
+        for (JSONObject record : readRecords(journalFile)) {
+            if (record.optLong(FIELD_SEQ) > compactedSeq) {
+                remaining.add(record);
+            }
+        }
+        final File tempFile = new File(journalFile.getPath() + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("failed to clear journal temp file");
+        }
+        write(tempFile, remaining, false, true);
+        if (!tempFile.renameTo(journalFile)) {
+            throw new IOException("failed to replace journal");
+        }
+    }
+
+    private static boolean endsWithTornRecord(@NonNull File journalFile) throws IOException {
+        if (journalFile.length() == 0) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "r")) {
+            file.seek(file.length() - 1);
+            return file.read() != '\n';
+        }
+    }
+
+    private static void write(@NonNull File file, @NonNull List<JSONObject> records, boolean startOnNewLine, boolean sync) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        if (startOnNewLine) {
+            builder.append('\n');
+        }
+        for (JSONObject record : records) {
+            builder.append(record.toString()).append('\n');
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(file, true)) {
+            outputStream.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            if (sync) {
+                outputStream.getFD().sync();
+            }
+        }
+    }
+
+    @NonNull
+    private static List<JSONObject> readRecords(@NonNull File journalFile) throws IOException {
+        final List<JSONObject> records = new ArrayList<>();
+        if (!journalFile.exists()) {
+            return records;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    records.add(new JSONObject(line));
+                } catch (JSONException e) {
+                    //a torn write leaves one unreadable line, appends after it always start on a fresh line.
+                }
+            }
+        }
+        return records;
+    }
+}
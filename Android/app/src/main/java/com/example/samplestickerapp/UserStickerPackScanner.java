@@ -0,0 +1,172 @@
+package com.example.samplestickerapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+//walks the store folders in short slices, checkpointing the position so a large library is covered across restarts.
+final class UserStickerPackScanner {
+    private static final String TAG = "UserStickerPackScanner";
+    private static final String PREFS_NAME = "user_sticker_pack_scanner";
+    private static final String PREF_PHASE = "phase";
+    private static final String PREF_CURSOR = "cursor";
+    private static final String PREF_LAST_COMPLETED = "last_completed";
+    private static final int PHASE_PACKS = 0;
+    private static final int PHASE_BLOBS = 1;
+    private static final int PHASE_TRASH = 2;
+    private static final int PHASE_STAGING = 3;
+    private static final int PHASE_COUNT = 4;
+    private static final long SLICE_BUDGET_MS = 25;
+    private static final long SLICE_INTERVAL_MS = 1000;
+    static final long INITIAL_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+    static final long SCAN_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+    //anything younger may belong to an add or import that has not committed yet.
+    private static final long GRACE_PERIOD_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        runnable.run();
+    }, "UserStickerPackScanner"));
+
+    private static boolean scheduled;
+    //sorted listing of the folder being walked, only touched on the scanner thread.
+    @Nullable
+    private static String[] entries;
+
+    private UserStickerPackScanner() {
+    }
+
+    static synchronized void schedule(@NonNull Context context) {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        final Context appContext = context.getApplicationContext();
+        final SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        final boolean inProgress = prefs.getInt(PREF_PHASE, PHASE_PACKS) != PHASE_PACKS || prefs.getString(PREF_CURSOR, null) != null;
+        final long sinceLastScan = System.currentTimeMillis() - prefs.getLong(PREF_LAST_COMPLETED, 0);
+        EXECUTOR.schedule(() -> runSlice(appContext), getInitialDelay(inProgress, sinceLastScan), TimeUnit.MILLISECONDS);
+    }
+
+    //an interrupted scan resumes soon after start, a finished one waits out the rest of its interval.
+    static long getInitialDelay(boolean inProgress, long sinceLastScanMillis) {
+        return inProgress || sinceLastScanMillis >= SCAN_INTERVAL_MS ? INITIAL_DELAY_MS : SCAN_INTERVAL_MS - sinceLastScanMillis;
+    }
+
+    private static void runSlice(@NonNull Context context) {
+        final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        int phase = prefs.getInt(PREF_PHASE, PHASE_PACKS);
+        String cursor = prefs.getString(PREF_CURSOR, null);
+        final long cutoffMillis = System.currentTimeMillis() - GRACE_PERIOD_MS;
+        final long deadline = SystemClock.uptimeMillis() + SLICE_BUDGET_MS;
+
+        while (phase < PHASE_COUNT && SystemClock.uptimeMillis() < deadline) {
+            if (entries == null) {
+                entries = listSorted(getPhaseDir(context, phase));
+            }
+            int index = getResumeIndex(entries, cursor);
+            while (index < entries.length && SystemClock.uptimeMillis() < deadline) {
+                reconcile(context, phase, new File(getPhaseDir(context, phase), entries[index]), cutoffMillis);
+                cursor = entries[index];
+                index++;
+            }
+            if (index < entries.length) {
+                break;
+            }
+            phase++;
+            cursor = null;
+            entries = null;
+        }
+
+        final SharedPreferences.Editor editor = prefs.edit();
+        if (phase >= PHASE_COUNT) {
+            editor.putInt(PREF_PHASE, PHASE_PACKS).remove(PREF_CURSOR).putLong(PREF_LAST_COMPLETED, System.currentTimeMillis()).apply();
+            EXECUTOR.schedule(() -> runSlice(context), SCAN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        editor.putInt(PREF_PHASE, phase).putString(PREF_CURSOR, cursor).apply();
+        EXECUTOR.schedule(() -> runSlice(context), SLICE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void reconcile(@NonNull Context context, int phase, @NonNull File entry, long cutoffMillis) {
+        try {
+            if (phase == PHASE_PACKS) {
+                if (entry.isDirectory()) {
+                    UserStickerPackStore.reconcilePackDir(context, entry, cutoffMillis);
+                }
+            } else if (phase == PHASE_BLOBS) {
+                UserStickerPackStore.reconcileBlob(context, entry, cutoffMillis);
+            } else if (phase == PHASE_TRASH) {
+                UserStickerPackStore.reconcileTrashEntry(context, entry);
+            } else if (isPastGracePeriod(entry, cutoffMillis)) {
+                //an import that is still running keeps touching its staging folder.
+                Log.w(TAG, "deleting abandoned import " + entry.getName());
+                deleteRecursively(entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            //one bad entry must not stall the walk, it is looked at again on the next scan.
+            Log.e(TAG, "failed to reconcile " + entry, e);
+        }
+    }
+
+    //the first entry after the checkpoint, which may have been deleted since it was written.
+    static int getResumeIndex(@NonNull String[] entries, @Nullable String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        final int found = Arrays.binarySearch(entries, cursor);
+        return found >= 0 ? found + 1 : -(found + 1);
+    }
+
+    static boolean isPastGracePeriod(@NonNull File entry, long cutoffMillis) {
+        return entry.lastModified() < cutoffMillis;
+    }
+
+    @NonNull
+    private static File getPhaseDir(@NonNull Context context, int phase) {
+        switch (phase) {
+            case PHASE_PACKS:
+                return UserStickerPackStore.getPacksDir(context);
+            case PHASE_BLOBS:
+                return UserStickerPackStore.getBlobsDir(context);
+            case PHASE_TRASH:
+                return UserStickerPackStore.getTrashDir(context);
+            case PHASE_STAGING:
+            default:
+                return UserStickerPackStore.getStagingDir(context);
+        }
+    }
+
+    @NonNull
+    private static String[] listSorted(@NonNull File dir) {
+        final String[] names = dir.list();
+        if (names == null) {
+            return new String[0];
+        }
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static void deleteRecursively(@NonNull File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -1,11 +1,14 @@
 package com.example.samplestickerapp;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.net.Uri;
+import android.os.Process;
 import android.text.TextUtils;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -14,234 +17,1220 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 final class UserStickerPackStore {
+    private static final String TAG = "UserStickerPackStore";
     private static final String ROOT_FOLDER = "user_sticker_packs";
     private static final String PACKS_FOLDER = "packs";
+    private static final String STAGING_FOLDER = "staging";
+    private static final String TRASH_FOLDER = "trash";
     private static final String METADATA_FILE = "contents.json";
+    private static final String JOURNAL_FILE = "contents.journal";
+    //compaction writes its snapshot without the lock, so it never shares a temp file with writeMetadata.
+    private static final String COMPACTION_TEMP_FILE = METADATA_FILE + ".compact.tmp";
+    private static final String METADATA_TEMP_FILE = METADATA_FILE + ".tmp";
+    private static final String FIELD_JOURNAL_SEQ = "journal_seq";
+    private static final String FIELD_MISSING = "missing";
     private static final String DEFAULT_TRAY_FILE = "tray.png";
     private static final String PREFS_NAME = "sticker_pack_prefs";
     private static final String PREF_HIDDEN_PACKS = "hidden_packs";
     private static final int TRAY_SIZE_PX = 96;
+    private static final long TRAY_SIZE_LIMIT_BYTES = 50 * 1024;
     private static final String DEFAULT_STICKER_EMOJI = "\uD83D\uDE42";
+    private static final long COMPACTION_THRESHOLD_BYTES = 64 * 1024;
+    //a safety net, callers that offer an undo purge through purgeDeletedPack once the offer is gone. it has to outlast
+    //an undo snackbar that accessibility settings keep on screen.
+    static final long UNDO_WINDOW_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final int PACK_LOCK_STRIPES = 16;
+    private static final ReentrantReadWriteLock[] PACK_LOCKS = new ReentrantReadWriteLock[PACK_LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < PACK_LOCK_STRIPES; i++) {
+            PACK_LOCKS[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private static final ExecutorService ENCODE_EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "UserStickerPackEncode"));
+    private static final ExecutorService COMPACTION_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "UserStickerPackCompaction"));
+    private static final ScheduledExecutorService PURGE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+        runnable.run();
+    }, "UserStickerPackPurge"));
+
+    //contents.json with the journal folded in, only touched while holding the class lock.
+    @Nullable
+    private static JSONObject metadataRoot;
+    private static long journalSeq;
+    //identifier to pack object of metadataRoot, rebuilt whenever the tree is reloaded.
+    private static Map<String, JSONObject> packIndex = new HashMap<>();
+    //blob file name to the number of stickers using it, rebuilt with packIndex.
+    private static Map<String, Integer> blobRefs = new HashMap<>();
+    //identifiers handed to a create that has not committed yet, so no other pack takes them meanwhile.
+    private static final Set<String> RESERVED_IDENTIFIERS = new HashSet<>();
+    //next suffix to try per identifier base, only a starting point so it survives reloads.
+    private static final Map<String, Integer> NEXT_SUFFIX = new HashMap<>();
+    //trash folder name to the pack moved into it, until it is purged or restored. Only touched under the class lock.
+    private static final Map<String, TrashedPack> TRASHED_PACKS = new HashMap<>();
+    private static boolean compactionScheduled;
+    //unmodifiable copy of the hidden pack preference, swapped whole by the preference listener.
+    @Nullable
+    private static volatile Set<String> hiddenPacks;
+    private static final AtomicLong HIDDEN_PACKS_VERSION = new AtomicLong();
+    private static final Object HIDDEN_PACKS_LOCK = new Object();
+    //preferences only keep a weak reference to their listeners, this one has to stay alive with the process.
+    @Nullable
+    private static SharedPreferences.OnSharedPreferenceChangeListener hiddenPacksListener;
+    private static final AtomicLong GENERATION = new AtomicLong();
+    @Nullable
+    private static volatile Snapshot snapshot;
 
     private UserStickerPackStore() {
     }
 
-    static synchronized List<StickerPack> loadStickerPacks(@NonNull Context context) {
-        try {
-            return parsePacksFromMetadata(readOrCreateMetadata(context));
-        } catch (Exception e) {
-            return new ArrayList<>();
-        }
+    //shared between callers, must not be modified.
+    static List<StickerPack> loadStickerPacks(@NonNull Context context) {
+        return getSnapshot(context).getPacks();
     }
 
-    static synchronized StickerPack createPack(@NonNull Context context, @NonNull String name, @NonNull String publisher) throws IOException {
-        final JSONObject root = readOrCreateMetadata(context);
-        final JSONArray packsArray = root.optJSONArray("sticker_packs");
-        if (packsArray == null) {
-            throw new IOException("invalid metadata");
-        }
+    static long getGeneration(@NonNull Context context) {
+        return getSnapshot(context).generation;
+    }
 
-        final String identifier = generateIdentifier(name, packsArray);
-        final JSONObject newPack = new JSONObject();
+    static StickerPack createPack(@NonNull Context context, @NonNull String name, @NonNull String publisher) throws IOException {
+        //the tray is encoded before any lock is taken, like stickers are.
+        ensureRootDir(context);
+        final File stagingDir = getStagingDir(context);
+        if (!stagingDir.exists() && !stagingDir.mkdirs()) {
+            throw new IOException("failed to create staging folder");
+        }
+        final File stagedTray = new File(stagingDir, UUID.randomUUID() + ".png");
+        String identifier = null;
         try {
-            newPack.put("identifier", identifier);
-            newPack.put("name", name);
-            newPack.put("publisher", publisher);
-            newPack.put("tray_image_file", DEFAULT_TRAY_FILE);
-            newPack.put("image_data_version", String.valueOf(System.currentTimeMillis()));
-            newPack.put("animated_sticker_pack", false);
-            newPack.put("stickers", new JSONArray());
-            packsArray.put(newPack);
-        } catch (JSONException e) {
-            throw new IOException("failed to build pack metadata", e);
+            createDefaultTrayIcon(stagedTray);
+            synchronized (UserStickerPackStore.class) {
+                getMetadata(context);
+                identifier = generateIdentifier(name);
+                RESERVED_IDENTIFIERS.add(identifier);
+            }
+            final StickerPack pack;
+            final Lock lock = getPackLock(identifier).writeLock();
+            lock.lock();
+            try {
+                final File packDir = getPackDir(context, identifier);
+                if (!packDir.exists() && !packDir.mkdirs()) {
+                    throw new IOException("failed to create pack folder");
+                }
+                if (!stagedTray.renameTo(new File(packDir, DEFAULT_TRAY_FILE))) {
+                    throw new IOException("failed to move tray image");
+                }
+                synchronized (UserStickerPackStore.class) {
+                    final JSONArray packsArray = getMetadata(context).optJSONArray("sticker_packs");
+                    if (packsArray == null) {
+                        throw new IOException("invalid metadata");
+                    }
+                    final JSONObject newPack = new JSONObject();
+                    try {
+                        newPack.put("identifier", identifier);
+                        newPack.put("name", name);
+                        newPack.put("publisher", publisher);
+                        newPack.put("tray_image_file", DEFAULT_TRAY_FILE);
+                        newPack.put("image_data_version", String.valueOf(System.currentTimeMillis()));
+                        newPack.put("animated_sticker_pack", false);
+                        newPack.put("stickers", new JSONArray());
+                    } catch (JSONException e) {
+                        throw new IOException("failed to build pack metadata", e);
+                    }
+                    packsArray.put(newPack);
+                    packIndex.put(identifier, newPack);
+                    pack = commitPack(context, newPack);
+                }
+            } finally {
+                lock.unlock();
+            }
+            finishCommit(context, Collections.singletonList(identifier), StickerContentProvider.CHANGE_INSERT);
+            return pack;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            stagedTray.delete();
+            if (identifier != null) {
+                synchronized (UserStickerPackStore.class) {
+                    RESERVED_IDENTIFIERS.remove(identifier);
+                }
+            }
         }
+    }
 
-        final File packDir = getPackDir(context, identifier);
-        if (!packDir.exists() && !packDir.mkdirs()) {
-            throw new IOException("failed to create pack folder");
-        }
-        createDefaultTrayIcon(packDir);
-        writeMetadata(context, root);
+    static StickerPack addStickerToPack(@NonNull Context context, @NonNull String identifier, @NonNull Uri imageUri) throws IOException {
+        return addStickersToPack(context, identifier, Collections.singletonList(imageUri));
+    }
 
-        final List<StickerPack> packs = loadStickerPacks(context);
-        final StickerPack createdPack = findPackByIdentifier(packs, identifier);
-        if (createdPack == null) {
-            throw new IOException("failed to create pack");
+    //either every sticker is added or none is, images the pack already has are skipped.
+    static StickerPack addStickersToPack(@NonNull Context context, @NonNull String identifier, @NonNull List<Uri> imageUris) throws IOException {
+        if (imageUris.isEmpty()) {
+            throw new IOException("no images selected");
         }
-        return createdPack;
+        final PackEdit edit = new PackEdit();
+        edit.addedImages.addAll(imageUris);
+        return editPack(context, identifier, edit);
     }
 
-    static synchronized StickerPack addStickerToPack(@NonNull Context context, @NonNull String identifier, @NonNull Uri imageUri) throws IOException {
-        final JSONObject root = readOrCreateMetadata(context);
-        final JSONObject packObject = findPackObject(root, identifier);
-        if (packObject == null) {
-            throw new IOException("pack not found");
-        }
+    static StickerPack removeStickerFromPack(@NonNull Context context, @NonNull String identifier, @NonNull String stickerFileName) throws IOException {
+        final PackEdit edit = new PackEdit();
+        edit.removedStickers.add(stickerFileName);
+        return editPack(context, identifier, edit);
+    }
 
-        final byte[] stickerWebp = StickerImageProcessor.createStickerWebp(context, imageUri);
-        final String fileName = String.format(Locale.US, "sticker_%d.webp", System.currentTimeMillis());
-        final File packDir = getPackDir(context, identifier);
-        if (!packDir.exists() && !packDir.mkdirs()) {
-            throw new IOException("failed to create pack folder");
-        }
-        writeBytes(new File(packDir, fileName), stickerWebp);
+    //removals run before additions, so an image removed and added again in the same edit stays.
+    static StickerPack editPack(@NonNull Context context, @NonNull String identifier, @NonNull PackEdit edit) throws IOException {
+        return editPacks(context, Collections.singletonMap(identifier, edit)).get(0);
+    }
 
+    //one journal write for every pack, either all edits are applied or none is.
+    @NonNull
+    static List<StickerPack> editPacks(@NonNull Context context, @NonNull Map<String, PackEdit> edits) throws IOException {
+        synchronized (UserStickerPackStore.class) {
+            for (String identifier : edits.keySet()) {
+                if (findPackObject(context, identifier) == null) {
+                    throw new IOException("pack not found: " + identifier);
+                }
+            }
+        }
+        final Map<String, List<UserStickerBlobs.StagedBlob>> stagedBlobs = new HashMap<>();
+        final List<Lock> heldLocks = new ArrayList<>();
+        final List<StickerPack> updatedPacks = new ArrayList<>(edits.size());
+        final List<String> changedIdentifiers = new ArrayList<>();
         try {
-            final JSONArray stickers = packObject.getJSONArray("stickers");
+            for (Map.Entry<String, PackEdit> entry : edits.entrySet()) {
+                final File packDir = getPackDir(context, entry.getKey());
+                if (!packDir.exists() && !packDir.mkdirs()) {
+                    throw new IOException("failed to create pack folder");
+                }
+                final List<Uri> addedImages = entry.getValue().addedImages;
+                stagedBlobs.put(entry.getKey(), addedImages.isEmpty()
+                        ? Collections.<UserStickerBlobs.StagedBlob>emptyList() : encodeStickers(context, addedImages));
+            }
+            //stripes are taken in index order, so two transactions over the same packs cannot deadlock.
+            final Set<ReentrantReadWriteLock> packLocks = new HashSet<>();
+            for (String identifier : edits.keySet()) {
+                packLocks.add(getPackLock(identifier));
+            }
+            for (ReentrantReadWriteLock packLock : PACK_LOCKS) {
+                if (packLocks.contains(packLock)) {
+                    packLock.writeLock().lock();
+                    heldLocks.add(packLock.writeLock());
+                }
+            }
+            for (String identifier : edits.keySet()) {
+                final List<UserStickerBlobs.StagedBlob> staged = stagedBlobs.get(identifier);
+                final boolean firstStickers;
+                synchronized (UserStickerPackStore.class) {
+                    firstStickers = getStickersArray(context, identifier).length() == 0;
+                }
+                if (firstStickers && !staged.isEmpty()) {
+                    createTrayFromSticker(getPackDir(context, identifier), staged.get(0).file);
+                }
+            }
+            synchronized (UserStickerPackStore.class) {
+                final List<JSONObject> changedPacks = new ArrayList<>();
+                final List<String> placedBlobs = new ArrayList<>();
+                final Map<String, StickerPack> committed = new HashMap<>();
+                try {
+                    for (Map.Entry<String, PackEdit> entry : edits.entrySet()) {
+                        final JSONObject packObject = findPackObject(context, entry.getKey());
+                        if (packObject == null) {
+                            throw new IOException("pack not found: " + entry.getKey());
+                        }
+                        if (applyPackEdit(context, packObject, entry.getValue(), stagedBlobs.get(entry.getKey()), placedBlobs)) {
+                            changedPacks.add(packObject);
+                            changedIdentifiers.add(entry.getKey());
+                        }
+                    }
+                    if (!changedPacks.isEmpty()) {
+                        for (StickerPack pack : commitPacks(context, changedPacks)) {
+                            committed.put(pack.identifier, pack);
+                        }
+                    }
+                } catch (IOException | JSONException e) {
+                    //every pack edited so far is dropped with the in-memory tree, none of them reaches the journal.
+                    metadataRoot = null;
+                    removePlacedBlobs(context, placedBlobs);
+                    throw e instanceof IOException ? (IOException) e : new IOException("failed to update sticker metadata", e);
+                }
+                for (Map.Entry<String, PackEdit> entry : edits.entrySet()) {
+                    final StickerPack pack = committed.get(entry.getKey());
+                    updatedPacks.add(pack != null ? pack : parsePackObject(Objects.requireNonNull(findPackObject(context, entry.getKey()))));
+                    if (pack == null) {
+                        continue;
+                    }
+                    for (String removed : entry.getValue().removedStickers) {
+                        if (UserStickerBlobs.isBlobName(removed)) {
+                            releaseBlob(context, removed);
+                        }
+                    }
+                }
+            }
+            for (String identifier : changedIdentifiers) {
+                for (String removed : edits.get(identifier).removedStickers) {
+                    final File stickerFile = getStickerFile(context, identifier, removed);
+                    if (!UserStickerBlobs.isBlobName(removed) && stickerFile.exists()) {
+                        //noinspection ResultOfMethodCallIgnored
+                        stickerFile.delete();
+                    }
+                }
+            }
+        } finally {
+            for (int i = heldLocks.size() - 1; i >= 0; i--) {
+                heldLocks.get(i).unlock();
+            }
+            //placed blobs were renamed away, whatever is left was never committed.
+            for (List<UserStickerBlobs.StagedBlob> staged : stagedBlobs.values()) {
+                for (UserStickerBlobs.StagedBlob blob : staged) {
+                    //noinspection ResultOfMethodCallIgnored
+                    blob.file.delete();
+                }
+            }
+        }
+        if (!changedIdentifiers.isEmpty()) {
+            finishCommit(context, changedIdentifiers, StickerContentProvider.CHANGE_UPDATE);
+        }
+        return updatedPacks;
+    }
+
+    private static boolean applyPackEdit(@NonNull Context context, @NonNull JSONObject packObject, @NonNull PackEdit edit,
+                                         @NonNull List<UserStickerBlobs.StagedBlob> stagedBlobs,
+                                         @NonNull List<String> placedBlobs) throws IOException, JSONException {
+        final String identifier = packObject.getString("identifier");
+        final JSONArray stickers = getStickersArray(context, identifier);
+        boolean changed = false;
+        boolean stickersChanged = false;
+        for (String removed : edit.removedStickers) {
+            if (!removeSticker(stickers, removed)) {
+                throw new IOException("sticker not found: " + removed);
+            }
+            stickersChanged = true;
+        }
+        final Set<String> fileNames = getStickerFileNames(stickers);
+        for (UserStickerBlobs.StagedBlob staged : stagedBlobs) {
+            if (UserStickerBlobs.place(getBlobsDir(context), staged)) {
+                placedBlobs.add(staged.fileName);
+            }
+            if (!fileNames.add(staged.fileName)) {
+                //the pack already has this exact image, adding it again only brings it back if it was lost.
+                final JSONObject existing = findSticker(stickers, staged.fileName);
+                if (existing != null && existing.remove(FIELD_MISSING) != null) {
+                    stickersChanged = true;
+                }
+                continue;
+            }
             final JSONObject sticker = new JSONObject();
-            sticker.put("image_file", fileName);
+            sticker.put("image_file", staged.fileName);
             final JSONArray emojis = new JSONArray();
             emojis.put(DEFAULT_STICKER_EMOJI);
             sticker.put("emojis", emojis);
+            putStickerFileInfo(sticker, staged.fileName, staged.size, staged.info);
             stickers.put(sticker);
-            packObject.put("image_data_version", String.valueOf(System.currentTimeMillis()));
+            retainBlob(staged.fileName);
+            stickersChanged = true;
+        }
+        if (edit.name != null && !edit.name.equals(packObject.optString("name"))) {
+            packObject.put("name", edit.name);
+            changed = true;
+        }
+        if (edit.publisher != null && !edit.publisher.equals(packObject.optString("publisher"))) {
+            packObject.put("publisher", edit.publisher);
+            changed = true;
+        }
+        if (!changed && !stickersChanged) {
+            return false;
+        }
+        if (stickersChanged) {
+            fillStickerFileInfo(context, identifier, stickers);
+        }
+        //bumped for renames too, in-app callers refresh a pack only when its version changes.
+        packObject.put("image_data_version", String.valueOf(System.currentTimeMillis()));
+        return true;
+    }
 
-            if (stickers.length() == 1) {
-                createTrayFromSticker(packDir, stickerWebp);
+    private static boolean removeSticker(@NonNull JSONArray stickers, @NonNull String stickerFileName) {
+        for (int i = 0; i < stickers.length(); i++) {
+            final JSONObject sticker = stickers.optJSONObject(i);
+            if (sticker != null && stickerFileName.equals(sticker.optString("image_file"))) {
+                stickers.remove(i);
+                return true;
             }
-        } catch (JSONException e) {
-            throw new IOException("failed to update sticker metadata", e);
         }
+        return false;
+    }
 
-        writeMetadata(context, root);
-        final List<StickerPack> packs = loadStickerPacks(context);
-        final StickerPack updatedPack = findPackByIdentifier(packs, identifier);
-        if (updatedPack == null) {
-            throw new IOException("failed to reload pack");
+    //the folder is renamed into the trash and purged later, restorePack brings it back until then.
+    static boolean deletePack(@NonNull Context context, @NonNull String identifier) throws IOException {
+        final TrashedPack trashed;
+        final Lock lock = getPackLock(identifier).writeLock();
+        lock.lock();
+        try {
+            synchronized (UserStickerPackStore.class) {
+                final JSONObject packObject = findPackObject(context, identifier);
+                final JSONArray packs = getMetadata(context).optJSONArray("sticker_packs");
+                if (packObject == null || packs == null) {
+                    return false;
+                }
+                final File trashDir = getTrashDir(context);
+                if (!trashDir.exists() && !trashDir.mkdirs()) {
+                    throw new IOException("failed to create trash folder");
+                }
+                trashed = new TrashedPack(identifier, packObject, new File(trashDir, identifier + "." + UUID.randomUUID()));
+                final File packDir = getPackDir(context, identifier);
+                if (packDir.exists() && !packDir.renameTo(trashed.dir)) {
+                    throw new IOException("failed to move pack to trash");
+                }
+                for (int i = 0; i < packs.length(); i++) {
+                    if (packs.opt(i) == packObject) {
+                        packs.remove(i);
+                        break;
+                    }
+                }
+                packIndex.remove(identifier);
+                //the trashed pack keeps its blob references until it is purged, so an undo finds every sticker again.
+                TRASHED_PACKS.put(trashed.dir.getName(), trashed);
+                try {
+                    commitDelete(context, identifier);
+                } catch (IOException e) {
+                    TRASHED_PACKS.remove(trashed.dir.getName());
+                    //noinspection ResultOfMethodCallIgnored
+                    trashed.dir.renameTo(packDir);
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
         }
-        return updatedPack;
+        PURGE_EXECUTOR.schedule(() -> purgeTrashedPack(context, trashed), UNDO_WINDOW_MS, TimeUnit.MILLISECONDS);
+        finishCommit(context, Collections.singletonList(identifier), StickerContentProvider.CHANGE_DELETE);
+        return true;
     }
 
-    static synchronized StickerPack removeStickerFromPack(@NonNull Context context, @NonNull String identifier, @NonNull String stickerFileName) throws IOException {
-        final JSONObject root = readOrCreateMetadata(context);
-        final JSONObject packObject = findPackObject(root, identifier);
-        if (packObject == null) {
-            throw new IOException("pack not found");
+    //null if there is nothing to restore or a new pack took the identifier since.
+    @Nullable
+    static StickerPack restorePack(@NonNull Context context, @NonNull String identifier) throws IOException {
+        final StickerPack restored;
+        final Lock lock = getPackLock(identifier).writeLock();
+        lock.lock();
+        try {
+            synchronized (UserStickerPackStore.class) {
+                final JSONArray packs = getMetadata(context).optJSONArray("sticker_packs");
+                TrashedPack trashed = null;
+                for (TrashedPack candidate : TRASHED_PACKS.values()) {
+                    if (candidate.identifier.equals(identifier) && (trashed == null || candidate.deletedAt > trashed.deletedAt)) {
+                        trashed = candidate;
+                    }
+                }
+                //a reserved identifier belongs to a pack that is being created and may clear the folder.
+                if (trashed == null || packs == null || isIdentifierTaken(identifier)) {
+                    return null;
+                }
+                final File packDir = getPackDir(context, identifier);
+                if (trashed.dir.exists() ? !trashed.dir.renameTo(packDir) : !packDir.mkdirs()) {
+                    throw new IOException("failed to restore pack folder");
+                }
+                TRASHED_PACKS.remove(trashed.dir.getName());
+                packs.put(trashed.packObject);
+                packIndex.put(identifier, trashed.packObject);
+                try {
+                    restored = commitPack(context, trashed.packObject);
+                } catch (IOException e) {
+                    //back into the trash, the scheduled purge still runs for it.
+                    TRASHED_PACKS.put(trashed.dir.getName(), trashed);
+                    //noinspection ResultOfMethodCallIgnored
+                    packDir.renameTo(trashed.dir);
+                    throw e;
+                }
+            }
+        } finally {
+            lock.unlock();
         }
-        final JSONArray stickers = packObject.optJSONArray("stickers");
-        if (stickers == null) {
-            throw new IOException("stickers not found");
+        finishCommit(context, Collections.singletonList(identifier), StickerContentProvider.CHANGE_INSERT);
+        return restored;
+    }
+
+    //for callers that no longer offer to undo the delete.
+    static void purgeDeletedPack(@NonNull Context context, @NonNull String identifier) {
+        final List<TrashedPack> purged = new ArrayList<>();
+        synchronized (UserStickerPackStore.class) {
+            for (TrashedPack trashed : TRASHED_PACKS.values()) {
+                if (trashed.identifier.equals(identifier)) {
+                    purged.add(trashed);
+                }
+            }
         }
+        final Context appContext = context.getApplicationContext();
+        for (TrashedPack trashed : purged) {
+            //the scheduled purge finds it gone and does nothing.
+            PURGE_EXECUTOR.execute(() -> purgeTrashedPack(appContext, trashed));
+        }
+    }
 
-        boolean removed = false;
-        for (int i = 0; i < stickers.length(); i++) {
-            final JSONObject sticker = stickers.optJSONObject(i);
-            if (sticker != null && stickerFileName.equals(sticker.optString("image_file"))) {
-                stickers.remove(i);
-                removed = true;
-                break;
+    //all packs are committed with one journal write, under new identifiers so they never replace existing packs.
+    @NonNull
+    static List<StickerPack> importArchive(@NonNull Context context, @NonNull Uri archiveUri) throws IOException {
+        ensureRootDir(context);
+        final File stagingDir = new File(getStagingDir(context), UUID.randomUUID().toString());
+        final List<UserStickerBlobs.StagedBlob> stagedBlobs = new ArrayList<>();
+        try {
+            final File extractedDir = new File(stagingDir, "archive");
+            try (InputStream inputStream = context.getContentResolver().openInputStream(archiveUri)) {
+                if (inputStream == null) {
+                    throw new IOException("unable to open archive");
+                }
+                StickerPackArchive.extract(inputStream, extractedDir);
+            }
+            final List<StickerPack> archivePacks;
+            try (InputStream contentsInputStream = new FileInputStream(new File(extractedDir, StickerPackArchive.CONTENTS_FILE))) {
+                archivePacks = ContentFileParser.parseStickerPacks(contentsInputStream);
+            } catch (FileNotFoundException e) {
+                throw new IOException("archive has no " + StickerPackArchive.CONTENTS_FILE, e);
+            } catch (IllegalStateException e) {
+                throw new IOException("invalid " + StickerPackArchive.CONTENTS_FILE + ": " + e.getMessage(), e);
+            }
+
+            final List<File> preparedDirs = new ArrayList<>(archivePacks.size());
+            final List<JSONObject> packObjects = new ArrayList<>(archivePacks.size());
+            for (StickerPack archivePack : archivePacks) {
+                final File preparedDir = new File(stagingDir, "pack_" + preparedDirs.size());
+                packObjects.add(prepareImportedPack(context, extractedDir, archivePack, preparedDir, stagedBlobs));
+                preparedDirs.add(preparedDir);
+            }
+
+            //identifiers are reserved first, so each new folder can be cleared and filled under its own stripe lock.
+            final List<String> identifiers = new ArrayList<>(packObjects.size());
+            synchronized (UserStickerPackStore.class) {
+                getMetadata(context);
+                for (JSONObject packObject : packObjects) {
+                    final String identifier = generateIdentifier(packObject.optString("name"));
+                    RESERVED_IDENTIFIERS.add(identifier);
+                    identifiers.add(identifier);
+                }
+            }
+            final List<Lock> heldLocks = new ArrayList<>();
+            final List<StickerPack> imported;
+            try {
+                final Set<ReentrantReadWriteLock> packLocks = new HashSet<>();
+                for (String identifier : identifiers) {
+                    packLocks.add(getPackLock(identifier));
+                }
+                for (ReentrantReadWriteLock packLock : PACK_LOCKS) {
+                    if (packLocks.contains(packLock)) {
+                        packLock.writeLock().lock();
+                        heldLocks.add(packLock.writeLock());
+                    }
+                }
+                imported = commitImportedPacks(context, identifiers, packObjects, preparedDirs, stagedBlobs);
+            } finally {
+                for (int i = heldLocks.size() - 1; i >= 0; i--) {
+                    heldLocks.get(i).unlock();
+                }
+                synchronized (UserStickerPackStore.class) {
+                    RESERVED_IDENTIFIERS.removeAll(identifiers);
+                }
+            }
+            finishCommit(context, identifiers, StickerContentProvider.CHANGE_INSERT);
+            return imported;
+        } finally {
+            for (UserStickerBlobs.StagedBlob staged : stagedBlobs) {
+                //noinspection ResultOfMethodCallIgnored
+                staged.file.delete();
             }
+            deleteRecursively(stagingDir);
         }
-        if (!removed) {
-            throw new IOException("sticker not found");
+    }
+
+    //the caller holds the stripe locks of all identifiers, a failure leaves neither folders nor new blobs behind.
+    @NonNull
+    private static List<StickerPack> commitImportedPacks(@NonNull Context context, @NonNull List<String> identifiers,
+                                                         @NonNull List<JSONObject> packObjects, @NonNull List<File> preparedDirs,
+                                                         @NonNull List<UserStickerBlobs.StagedBlob> stagedBlobs) throws IOException {
+        final List<File> movedDirs = new ArrayList<>(identifiers.size());
+        final List<String> placedBlobs = new ArrayList<>();
+        try {
+            for (int i = 0; i < identifiers.size(); i++) {
+                final File packDir = getPackDir(context, identifiers.get(i));
+                //nothing references a folder under an unused identifier, it is left over from a failed delete.
+                deleteRecursively(packDir);
+                final File packsDir = packDir.getParentFile();
+                if (packsDir != null && !packsDir.exists() && !packsDir.mkdirs()) {
+                    throw new IOException("failed to create pack folder");
+                }
+                if (!preparedDirs.get(i).renameTo(packDir)) {
+                    throw new IOException("failed to move imported pack");
+                }
+                movedDirs.add(packDir);
+            }
+            synchronized (UserStickerPackStore.class) {
+                try {
+                    final JSONArray packsArray = getMetadata(context).optJSONArray("sticker_packs");
+                    if (packsArray == null) {
+                        throw new IOException("invalid metadata");
+                    }
+                    for (UserStickerBlobs.StagedBlob staged : stagedBlobs) {
+                        if (UserStickerBlobs.place(getBlobsDir(context), staged)) {
+                            placedBlobs.add(staged.fileName);
+                        }
+                    }
+                    for (int i = 0; i < packObjects.size(); i++) {
+                        final JSONObject packObject = packObjects.get(i);
+                        packObject.put("identifier", identifiers.get(i));
+                        packsArray.put(packObject);
+                        packIndex.put(identifiers.get(i), packObject);
+                        for (String fileName : getStickerFileNames(packObject.getJSONArray("stickers"))) {
+                            retainBlob(fileName);
+                        }
+                    }
+                    return commitPacks(context, packObjects);
+                } catch (IOException | JSONException e) {
+                    metadataRoot = null;
+                    removePlacedBlobs(context, placedBlobs);
+                    throw e instanceof IOException ? (IOException) e : new IOException("failed to build pack metadata", e);
+                }
+            }
+        } catch (IOException e) {
+            for (File movedDir : movedDirs) {
+                deleteRecursively(movedDir);
+            }
+            throw e;
         }
+    }
 
+    //each pack is read locked only while its files are copied aside, the archive is written without any lock held.
+    @NonNull
+    static ExportResult exportArchive(@NonNull Context context, @NonNull Uri targetUri) throws IOException {
+        ensureRootDir(context);
+        final File stagingDir = new File(getStagingDir(context), UUID.randomUUID().toString());
         try {
-            packObject.put("image_data_version", String.valueOf(System.currentTimeMillis()));
+            final JSONArray packsArray = new JSONArray();
+            final Map<String, File> files = new LinkedHashMap<>();
+            int skippedCount = 0;
+            String androidPlayStoreLink = null;
+            String iosAppStoreLink = null;
+            for (StickerPack listed : loadStickerPacks(context)) {
+                final Lock lock = getPackLock(listed.identifier).readLock();
+                lock.lock();
+                try {
+                    final StickerPack pack = findPack(context, listed.identifier);
+                    if (pack == null) {
+                        continue;
+                    }
+                    if (pack.getStickers().isEmpty()) {
+                        //contents.json does not allow empty packs, they would make the whole archive unreadable.
+                        skippedCount++;
+                        continue;
+                    }
+                    final File copyDir = new File(stagingDir, String.valueOf(packsArray.length()));
+                    if (!copyDir.mkdirs()) {
+                        throw new IOException("failed to create staging folder");
+                    }
+                    final File trayCopy = new File(copyDir, pack.trayImageFile);
+                    copyFile(new File(getPackDir(context, pack.identifier), pack.trayImageFile), trayCopy);
+                    files.put(pack.identifier + "/" + pack.trayImageFile, trayCopy);
+                    for (Sticker sticker : pack.getStickers()) {
+                        final File stickerCopy = new File(copyDir, sticker.imageFileName);
+                        copyFile(getStickerFile(context, pack.identifier, sticker.imageFileName), stickerCopy);
+                        files.put(pack.identifier + "/" + sticker.imageFileName, stickerCopy);
+                    }
+                    packsArray.put(toArchivePackObject(pack));
+                    androidPlayStoreLink = pack.androidPlayStoreLink;
+                    iosAppStoreLink = pack.iosAppStoreLink;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (packsArray.length() == 0) {
+                throw new IOException("no packs with stickers to export");
+            }
+            final JSONObject root = new JSONObject();
+            if (!TextUtils.isEmpty(androidPlayStoreLink)) {
+                root.put("android_play_store_link", androidPlayStoreLink);
+            }
+            if (!TextUtils.isEmpty(iosAppStoreLink)) {
+                root.put("ios_app_store_link", iosAppStoreLink);
+            }
+            root.put("sticker_packs", packsArray);
+
+            try (OutputStream outputStream = context.getContentResolver().openOutputStream(targetUri)) {
+                if (outputStream == null) {
+                    throw new IOException("unable to open export file");
+                }
+                StickerPackArchive.write(outputStream, root.toString().getBytes(StandardCharsets.UTF_8), files);
+            }
+            return new ExportResult(packsArray.length(), skippedCount);
         } catch (JSONException e) {
-            throw new IOException("failed to update sticker metadata", e);
+            throw new IOException("failed to build archive metadata", e);
+        } finally {
+            deleteRecursively(stagingDir);
         }
-        writeMetadata(context, root);
-        final File stickerFile = getStickerFile(context, identifier, stickerFileName);
-        if (stickerFile.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            stickerFile.delete();
+    }
+
+    //only the fields ContentFileParser accepts.
+    @NonNull
+    private static JSONObject toArchivePackObject(@NonNull StickerPack pack) throws JSONException {
+        final JSONObject packObject = new JSONObject();
+        packObject.put("identifier", pack.identifier);
+        packObject.put("name", pack.name);
+        packObject.put("publisher", pack.publisher);
+        packObject.put("tray_image_file", pack.trayImageFile);
+        putIfNotEmpty(packObject, "publisher_email", pack.publisherEmail);
+        putIfNotEmpty(packObject, "publisher_website", pack.publisherWebsite);
+        putIfNotEmpty(packObject, "privacy_policy_website", pack.privacyPolicyWebsite);
+        putIfNotEmpty(packObject, "license_agreement_website", pack.licenseAgreementWebsite);
+        packObject.put("image_data_version", pack.imageDataVersion);
+        packObject.put("avoid_cache", pack.avoidCache);
+        packObject.put("animated_sticker_pack", pack.animatedStickerPack);
+        final JSONArray stickers = new JSONArray();
+        for (Sticker sticker : pack.getStickers()) {
+            final JSONObject stickerObject = new JSONObject();
+            stickerObject.put("image_file", sticker.imageFileName);
+            final JSONArray emojis = new JSONArray();
+            for (String emoji : sticker.emojis) {
+                emojis.put(emoji);
+            }
+            stickerObject.put("emojis", emojis);
+            putIfNotEmpty(stickerObject, "accessibility_text", sticker.accessibilityText);
+            stickers.put(stickerObject);
         }
+        packObject.put("stickers", stickers);
+        return packObject;
+    }
 
-        final List<StickerPack> packs = loadStickerPacks(context);
-        final StickerPack updatedPack = findPackByIdentifier(packs, identifier);
-        if (updatedPack == null) {
-            throw new IOException("failed to reload pack");
+    private static void putIfNotEmpty(@NonNull JSONObject object, @NonNull String name, @Nullable String value) throws JSONException {
+        if (!TextUtils.isEmpty(value)) {
+            object.put(name, value);
         }
-        return updatedPack;
     }
 
-    static synchronized boolean deletePack(@NonNull Context context, @NonNull String identifier) throws IOException {
-        final JSONObject root = readOrCreateMetadata(context);
-        final JSONArray packs = root.optJSONArray("sticker_packs");
-        if (packs == null) {
-            return false;
+    //returns the pack's metadata, still without an identifier.
+    @NonNull
+    private static JSONObject prepareImportedPack(@NonNull Context context, @NonNull File extractedDir, @NonNull StickerPack archivePack, @NonNull File packDir, @NonNull List<UserStickerBlobs.StagedBlob> stagedBlobs) throws IOException {
+        if (!packDir.mkdirs()) {
+            throw new IOException("failed to create pack folder");
+        }
+        final List<Sticker> archiveStickers = archivePack.getStickers();
+        final UserStickerBlobs.StagedBlob[] staged = new UserStickerBlobs.StagedBlob[archiveStickers.size()];
+        final List<Integer> oversizedIndexes = new ArrayList<>();
+        final List<Uri> oversizedUris = new ArrayList<>();
+        for (int i = 0; i < archiveStickers.size(); i++) {
+            final String fileName = archiveStickers.get(i).imageFileName;
+            final File source = StickerPackArchive.findPackFile(extractedDir, archivePack.identifier, fileName);
+            if (!source.exists()) {
+                throw new IOException("sticker file missing from archive: " + fileName);
+            }
+            if (StickerImageProcessor.meetsStickerLimits(source, archivePack.animatedStickerPack)) {
+                staged[i] = UserStickerBlobs.stage(source);
+            } else if (archivePack.animatedStickerPack) {
+                throw new IOException("animated sticker exceeds the sticker limits: " + fileName);
+            } else {
+                oversizedIndexes.add(i);
+                oversizedUris.add(Uri.fromFile(source));
+            }
+        }
+        if (!oversizedUris.isEmpty()) {
+            final List<UserStickerBlobs.StagedBlob> encoded = encodeStickers(context, oversizedUris);
+            for (int i = 0; i < encoded.size(); i++) {
+                staged[oversizedIndexes.get(i)] = encoded.get(i);
+            }
+        }
+        for (UserStickerBlobs.StagedBlob blob : staged) {
+            stagedBlobs.add(blob);
         }
 
-        boolean removed = false;
-        for (int i = 0; i < packs.length(); i++) {
-            final JSONObject pack = packs.optJSONObject(i);
-            if (pack != null && identifier.equals(pack.optString("identifier"))) {
-                packs.remove(i);
-                removed = true;
-                break;
+        String trayImageFile = archivePack.trayImageFile;
+        final File traySource = StickerPackArchive.findPackFile(extractedDir, archivePack.identifier, trayImageFile);
+        if (!traySource.exists() || traySource.length() > TRAY_SIZE_LIMIT_BYTES || !traySource.renameTo(new File(packDir, trayImageFile))) {
+            trayImageFile = DEFAULT_TRAY_FILE;
+            createTrayFromSticker(packDir, staged[0].file);
+        }
+
+        try {
+            final JSONObject packObject = new JSONObject();
+            packObject.put("name", archivePack.name);
+            packObject.put("publisher", archivePack.publisher);
+            packObject.put("tray_image_file", trayImageFile);
+            packObject.putOpt("publisher_email", archivePack.publisherEmail);
+            packObject.putOpt("publisher_website", archivePack.publisherWebsite);
+            packObject.putOpt("privacy_policy_website", archivePack.privacyPolicyWebsite);
+            packObject.putOpt("license_agreement_website", archivePack.licenseAgreementWebsite);
+            packObject.put("image_data_version", String.valueOf(System.currentTimeMillis()));
+            packObject.put("avoid_cache", archivePack.avoidCache);
+            packObject.put("animated_sticker_pack", archivePack.animatedStickerPack);
+            final JSONArray stickers = new JSONArray();
+            final Set<String> fileNames = new HashSet<>();
+            for (int i = 0; i < archiveStickers.size(); i++) {
+                if (!fileNames.add(staged[i].fileName)) {
+                    //the archive repeats an image, the pack keeps it once.
+                    continue;
+                }
+                final Sticker archiveSticker = archiveStickers.get(i);
+                final JSONObject sticker = new JSONObject();
+                sticker.put("image_file", staged[i].fileName);
+                final JSONArray emojis = new JSONArray();
+                for (String emoji : archiveSticker.emojis) {
+                    emojis.put(emoji);
+                }
+                if (emojis.length() == 0) {
+                    emojis.put(DEFAULT_STICKER_EMOJI);
+                }
+                sticker.put("emojis", emojis);
+                sticker.putOpt("accessibility_text", archiveSticker.accessibilityText);
+                putStickerFileInfo(sticker, staged[i].fileName, staged[i].size, staged[i].info);
+                stickers.put(sticker);
             }
+            packObject.put("stickers", stickers);
+            return packObject;
+        } catch (JSONException e) {
+            throw new IOException("failed to build pack metadata", e);
         }
+    }
 
-        if (!removed) {
-            return false;
+    //anything modified after cutoffMillis is left alone, it may belong to an operation that has not committed yet.
+    static void reconcilePackDir(@NonNull Context context, @NonNull File packDir, long cutoffMillis) throws IOException {
+        final String identifier = packDir.getName();
+        boolean markedMissing = false;
+        final Lock lock = getPackLock(identifier).writeLock();
+        lock.lock();
+        try {
+            final Set<String> referenced;
+            final String trayImageFile;
+            final List<String> presentFileNames = new ArrayList<>();
+            synchronized (UserStickerPackStore.class) {
+                final JSONObject packObject = findPackObject(context, identifier);
+                if (packObject == null) {
+                    referenced = null;
+                    trayImageFile = null;
+                } else {
+                    final JSONArray stickers = getStickersArray(context, identifier);
+                    referenced = getStickerFileNames(stickers);
+                    trayImageFile = packObject.optString("tray_image_file", DEFAULT_TRAY_FILE);
+                    referenced.add(trayImageFile);
+                    for (int i = 0; i < stickers.length(); i++) {
+                        final JSONObject sticker = stickers.optJSONObject(i);
+                        if (sticker != null && !sticker.optBoolean(FIELD_MISSING, false)) {
+                            presentFileNames.add(sticker.optString("image_file"));
+                        }
+                    }
+                }
+            }
+            //stat without the class lock, the pack's write lock keeps its stickers as they are.
+            final Set<String> lostFileNames = new HashSet<>();
+            for (String fileName : presentFileNames) {
+                if (!getStickerFile(context, identifier, fileName).exists()) {
+                    lostFileNames.add(fileName);
+                }
+            }
+            if (!lostFileNames.isEmpty()) {
+                markedMissing = markStickersMissing(context, identifier, lostFileNames);
+            }
+            if (referenced == null) {
+                if (packDir.lastModified() < cutoffMillis) {
+                    Log.w(TAG, "deleting orphan pack folder " + identifier);
+                    deleteRecursively(packDir);
+                }
+                return;
+            }
+            final File[] files = packDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!referenced.contains(file.getName()) && file.lastModified() < cutoffMillis) {
+                        Log.w(TAG, "deleting orphan file " + identifier + "/" + file.getName());
+                        deleteRecursively(file);
+                    }
+                }
+            }
+            if (DEFAULT_TRAY_FILE.equals(trayImageFile) && !new File(packDir, trayImageFile).exists()) {
+                createDefaultTrayIcon(new File(packDir, trayImageFile));
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (markedMissing) {
+            finishCommit(context, Collections.singletonList(identifier), StickerContentProvider.CHANGE_UPDATE);
         }
+    }
 
-        writeMetadata(context, root);
-        deleteRecursively(getPackDir(context, identifier));
+    private static boolean markStickersMissing(@NonNull Context context, @NonNull String identifier, @NonNull Set<String> fileNames) throws IOException {
+        synchronized (UserStickerPackStore.class) {
+            final JSONObject packObject = findPackObject(context, identifier);
+            if (packObject == null) {
+                return false;
+            }
+            final JSONArray stickers = getStickersArray(context, identifier);
+            try {
+                for (int i = 0; i < stickers.length(); i++) {
+                    final JSONObject sticker = stickers.optJSONObject(i);
+                    if (sticker != null && fileNames.contains(sticker.optString("image_file"))) {
+                        sticker.put(FIELD_MISSING, true);
+                    }
+                }
+                packObject.put("image_data_version", String.valueOf(System.currentTimeMillis()));
+            } catch (JSONException e) {
+                metadataRoot = null;
+                throw new IOException("failed to update sticker metadata", e);
+            }
+            Log.w(TAG, "marked missing stickers in pack " + identifier);
+            commitPack(context, packObject);
+        }
         return true;
     }
 
-    static synchronized void hidePack(@NonNull Context context, @NonNull String identifier) {
-        final Set<String> hidden = getHiddenPacks(context);
-        hidden.add(identifier);
-        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().putStringSet(PREF_HIDDEN_PACKS, hidden).apply();
+    static void reconcileBlob(@NonNull Context context, @NonNull File blobFile, long cutoffMillis) throws IOException {
+        if (blobFile.lastModified() >= cutoffMillis) {
+            return;
+        }
+        final String fileName = blobFile.getName();
+        synchronized (UserStickerPackStore.class) {
+            getMetadata(context);
+            if (UserStickerBlobs.isBlobName(fileName) ? !blobRefs.containsKey(fileName) : fileName.endsWith(UserStickerBlobs.TEMP_SUFFIX)) {
+                Log.w(TAG, "deleting orphan sticker file " + fileName);
+                //noinspection ResultOfMethodCallIgnored
+                blobFile.delete();
+            }
+        }
+    }
+
+    //left behind by a purge that did not run before the process ended.
+    static void reconcileTrashEntry(@NonNull Context context, @NonNull File trashEntry) {
+        synchronized (UserStickerPackStore.class) {
+            if (TRASHED_PACKS.containsKey(trashEntry.getName())) {
+                return;
+            }
+        }
+        Log.w(TAG, "deleting leftover trash " + trashEntry.getName());
+        deleteRecursively(trashEntry);
+    }
+
+    @NonNull
+    static File getPacksDir(@NonNull Context context) {
+        return new File(getRootDir(context), PACKS_FOLDER);
+    }
+
+    @NonNull
+    static File getStagingDir(@NonNull Context context) {
+        return new File(getRootDir(context), STAGING_FOLDER);
     }
 
-    static synchronized boolean isPackHidden(@NonNull Context context, @NonNull String identifier) {
+    @NonNull
+    static File getTrashDir(@NonNull Context context) {
+        return new File(getRootDir(context), TRASH_FOLDER);
+    }
+
+    static void hidePack(@NonNull Context context, @NonNull String identifier) {
+        hidePacks(context, Collections.singleton(identifier));
+    }
+
+    static void hidePacks(@NonNull Context context, @NonNull Collection<String> identifiers) {
+        updateHiddenPacks(context, identifiers, true);
+    }
+
+    static void unhidePacks(@NonNull Context context, @NonNull Collection<String> identifiers) {
+        updateHiddenPacks(context, identifiers, false);
+    }
+
+    static boolean isPackHidden(@NonNull Context context, @NonNull String identifier) {
         return getHiddenPacks(context).contains(identifier);
     }
 
+    //shared between callers, a change to the preference replaces the set instead.
+    @NonNull
+    static Set<String> getHiddenPacks(@NonNull Context context) {
+        final Set<String> current = hiddenPacks;
+        if (current != null) {
+            return current;
+        }
+        synchronized (HIDDEN_PACKS_LOCK) {
+            if (hiddenPacks == null) {
+                final SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                hiddenPacksListener = (changedPrefs, key) -> {
+                    if (PREF_HIDDEN_PACKS.equals(key)) {
+                        refreshHiddenPacks(changedPrefs);
+                    }
+                };
+                prefs.registerOnSharedPreferenceChangeListener(hiddenPacksListener);
+                refreshHiddenPacks(prefs);
+            }
+            return Objects.requireNonNull(hiddenPacks);
+        }
+    }
+
+    static long getHiddenPacksVersion() {
+        return HIDDEN_PACKS_VERSION.get();
+    }
+
+    //older stickers and tray images live in the pack folder.
     static File getStickerFile(@NonNull Context context, @NonNull String identifier, @NonNull String fileName) {
+        if (UserStickerBlobs.isBlobName(fileName)) {
+            return new File(getBlobsDir(context), fileName);
+        }
         return new File(getPackDir(context, identifier), fileName);
     }
 
     static boolean isCustomPack(@NonNull Context context, @NonNull String identifier) {
-        for (StickerPack pack : loadStickerPacks(context)) {
-            if (identifier.equals(pack.identifier)) {
-                return true;
-            }
+        return getSnapshot(context).packs.get(identifier) != null;
+    }
+
+    //shared between callers like loadStickerPacks, must not be modified.
+    @Nullable
+    static StickerPack findPack(@NonNull Context context, @NonNull String identifier) {
+        return getSnapshot(context).packs.get(identifier);
+    }
+
+    //held for a whole pack operation, commits take the class lock only for the in-memory update and the append.
+    @NonNull
+    private static ReentrantReadWriteLock getPackLock(@NonNull String identifier) {
+        return PACK_LOCKS[(identifier.hashCode() & Integer.MAX_VALUE) % PACK_LOCKS.length];
+    }
+
+    @NonNull
+    private static JSONArray getStickersArray(@NonNull Context context, @NonNull String identifier) throws IOException {
+        final JSONObject packObject = findPackObject(context, identifier);
+        if (packObject == null) {
+            throw new IOException("pack not found");
         }
-        return false;
+        final JSONArray stickers = packObject.optJSONArray("stickers");
+        if (stickers == null) {
+            throw new IOException("stickers not found");
+        }
+        return stickers;
     }
 
     @Nullable
-    private static StickerPack findPackByIdentifier(@NonNull List<StickerPack> packs, @NonNull String identifier) {
-        for (StickerPack pack : packs) {
-            if (identifier.equals(pack.identifier)) {
-                return pack;
+    private static JSONObject findPackObject(@NonNull Context context, @NonNull String identifier) throws IOException {
+        getMetadata(context);
+        return packIndex.get(identifier);
+    }
+
+    @NonNull
+    private static Map<String, JSONObject> indexPacks(@NonNull JSONObject root) {
+        final Map<String, JSONObject> index = new HashMap<>();
+        final JSONArray packs = root.optJSONArray("sticker_packs");
+        if (packs != null) {
+            for (int i = 0; i < packs.length(); i++) {
+                final JSONObject pack = packs.optJSONObject(i);
+                if (pack != null) {
+                    index.put(pack.optString("identifier"), pack);
+                }
             }
         }
-        return null;
+        return index;
     }
 
-    @Nullable
-    private static JSONObject findPackObject(@NonNull JSONObject root, @NonNull String identifier) {
+    @NonNull
+    private static Map<String, Integer> countBlobRefs(@NonNull JSONObject root) {
+        final Map<String, Integer> refs = new HashMap<>();
         final JSONArray packs = root.optJSONArray("sticker_packs");
-        if (packs == null) {
-            return null;
+        if (packs != null) {
+            for (int i = 0; i < packs.length(); i++) {
+                countBlobRefs(refs, packs.optJSONObject(i));
+            }
         }
-        for (int i = 0; i < packs.length(); i++) {
-            final JSONObject pack = packs.optJSONObject(i);
-            if (pack != null && identifier.equals(pack.optString("identifier"))) {
-                return pack;
+        for (TrashedPack trashed : TRASHED_PACKS.values()) {
+            countBlobRefs(refs, trashed.packObject);
+        }
+        return refs;
+    }
+
+    private static void countBlobRefs(@NonNull Map<String, Integer> refs, @Nullable JSONObject pack) {
+        final JSONArray stickers = pack != null ? pack.optJSONArray("stickers") : null;
+        if (stickers == null) {
+            return;
+        }
+        for (String fileName : getStickerFileNames(stickers)) {
+            if (UserStickerBlobs.isBlobName(fileName)) {
+                final Integer count = refs.get(fileName);
+                refs.put(fileName, count == null ? 1 : count + 1);
+            }
+        }
+    }
+
+    @NonNull
+    private static JSONObject getMetadata(@NonNull Context context) throws IOException {
+        if (metadataRoot == null) {
+            final JSONObject root = readOrCreateMetadata(context);
+            journalSeq = UserStickerPackJournal.fold(getJournalFile(context), root, root.optLong(FIELD_JOURNAL_SEQ, 0));
+            packIndex = indexPacks(root);
+            blobRefs = countBlobRefs(root);
+            metadataRoot = root;
+        }
+        return metadataRoot;
+    }
+
+    @NonNull
+    private static Snapshot getSnapshot(@NonNull Context context) {
+        final Snapshot current = snapshot;
+        if (current != null && current.isCurrent(context)) {
+            return current;
+        }
+        synchronized (UserStickerPackStore.class) {
+            if (snapshot != null) {
+                if (snapshot.isCurrent(context)) {
+                    return snapshot;
+                }
+                //the files were replaced underneath us, the tree cannot be trusted anymore.
+                metadataRoot = null;
+            }
+            try {
+                snapshot = new Snapshot(GENERATION.incrementAndGet(), PackTrie.of(parsePacksFromMetadata(getMetadata(context))), context);
+                return snapshot;
+            } catch (IOException e) {
+                Log.e(TAG, "failed to load sticker pack metadata", e);
+                return new Snapshot(GENERATION.get(), PackTrie.EMPTY, context);
+            }
+        }
+    }
+
+    //readers never see a partially applied change, a null value removes the pack.
+    private static void publishPacks(@NonNull Context context, @NonNull Map<String, StickerPack> changes) {
+        final Snapshot current = snapshot;
+        if (current == null) {
+            //nobody has read yet, the first reader builds the snapshot from the tree.
+            return;
+        }
+        //only the changed packs are copied, the rest of the trie is shared with the current snapshot.
+        PackTrie packs = current.packs;
+        for (Map.Entry<String, StickerPack> change : changes.entrySet()) {
+            packs = packs.with(change.getKey(), change.getValue());
+        }
+        snapshot = new Snapshot(GENERATION.incrementAndGet(), packs, context);
+    }
+
+    @NonNull
+    private static StickerPack commitPack(@NonNull Context context, @NonNull JSONObject packObject) throws IOException {
+        return commitPacks(context, Collections.singletonList(packObject)).get(0);
+    }
+
+    //the caller notifies observers through finishCommit once it has released its locks. callers get copies, the
+    //published packs are shared by every reader.
+    @NonNull
+    private static List<StickerPack> commitPacks(@NonNull Context context, @NonNull List<JSONObject> packObjects) throws IOException {
+        final List<JSONObject> records = new ArrayList<>(packObjects.size());
+        for (JSONObject packObject : packObjects) {
+            records.add(UserStickerPackJournal.putRecord(journalSeq + records.size() + 1, packObject));
+        }
+        appendToJournal(context, records);
+        final Map<String, StickerPack> changes = new LinkedHashMap<>();
+        final List<StickerPack> packs = new ArrayList<>(packObjects.size());
+        for (JSONObject packObject : packObjects) {
+            final StickerPack pack = parsePackObject(packObject);
+            changes.put(pack.identifier, pack);
+            packs.add(pack.copy());
+        }
+        publishPacks(context, changes);
+        return packs;
+    }
+
+    private static void commitDelete(@NonNull Context context, @NonNull String identifier) throws IOException {
+        appendToJournal(context, Collections.singletonList(UserStickerPackJournal.deleteRecord(journalSeq + 1, identifier)));
+        publishPacks(context, Collections.singletonMap(identifier, null));
+    }
+
+    private static void appendToJournal(@NonNull Context context, @NonNull List<JSONObject> records) throws IOException {
+        try {
+            ensureRootDir(context);
+            UserStickerPackJournal.append(getJournalFile(context), records);
+        } catch (IOException e) {
+            //the in-memory tree already carries the change, drop it so the next read matches what is on disk.
+            metadataRoot = null;
+            throw e;
+        }
+        journalSeq += records.size();
+        if (!compactionScheduled && getJournalFile(context).length() >= COMPACTION_THRESHOLD_BYTES) {
+            compactionScheduled = true;
+            final Context appContext = context.getApplicationContext();
+            COMPACTION_EXECUTOR.execute(() -> compact(appContext));
+        }
+    }
+
+    //a change is visible to readers before it is durable, like any write that has not reached the disk yet.
+    private static void syncJournal(@NonNull Context context) throws IOException {
+        UserStickerPackJournal.sync(getJournalFile(context));
+    }
+
+    //observers query the provider from their callback, so they are notified only once no store lock is held.
+    private static void finishCommit(@NonNull Context context, @NonNull List<String> identifiers, @NonNull String changeType) throws IOException {
+        try {
+            syncJournal(context);
+        } finally {
+            //the change is already published, observers hear about it even if the sync failed.
+            for (String identifier : identifiers) {
+                StickerContentProvider.notifyPackChanged(context, identifier, changeType);
+            }
+        }
+    }
+
+    //serialized under the lock but written without it, only the rename and the trim block readers.
+    private static void compact(@NonNull Context context) {
+        try {
+            final String serialized;
+            final long snapshotSeq;
+            synchronized (UserStickerPackStore.class) {
+                final JSONObject root = getMetadata(context);
+                root.put(FIELD_JOURNAL_SEQ, journalSeq);
+                serialized = root.toString();
+                snapshotSeq = journalSeq;
+            }
+            final File tempFile = new File(getRootDir(context), COMPACTION_TEMP_FILE);
+            writeBytes(tempFile, serialized.getBytes(StandardCharsets.UTF_8));
+            synchronized (UserStickerPackStore.class) {
+                if (!tempFile.renameTo(getMetadataFile(context))) {
+                    throw new IOException("failed to replace metadata snapshot");
+                }
+                UserStickerPackJournal.trim(getJournalFile(context), snapshotSeq);
+                if (snapshot != null) {
+                    //same packs, only the files behind them changed.
+                    snapshot = new Snapshot(snapshot.generation, snapshot.packs, context);
+                }
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "failed to compact sticker pack journal", e);
+        } finally {
+            synchronized (UserStickerPackStore.class) {
+                compactionScheduled = false;
             }
         }
-        return null;
     }
 
     @NonNull
@@ -282,38 +1271,57 @@ final class UserStickerPackStore {
             if (packJson == null) {
                 continue;
             }
-            final String identifier = packJson.optString("identifier");
-            final String name = packJson.optString("name");
-            final String publisher = packJson.optString("publisher");
-            final String trayImageFile = packJson.optString("tray_image_file", DEFAULT_TRAY_FILE);
-            final String imageDataVersion = packJson.optString("image_data_version", String.valueOf(System.currentTimeMillis()));
-            final boolean avoidCache = packJson.optBoolean("avoid_cache", false);
-            final boolean animated = packJson.optBoolean("animated_sticker_pack", false);
-            if (TextUtils.isEmpty(identifier) || TextUtils.isEmpty(name) || TextUtils.isEmpty(publisher)) {
-                continue;
+            final StickerPack pack = parsePack(packJson, androidPlayStoreLink, iosAppStoreLink);
+            if (pack != null) {
+                packs.add(pack);
             }
-            final StickerPack pack = new StickerPack(
-                    identifier,
-                    name,
-                    publisher,
-                    trayImageFile,
-                    packJson.optString("publisher_email"),
-                    packJson.optString("publisher_website"),
-                    packJson.optString("privacy_policy_website"),
-                    packJson.optString("license_agreement_website"),
-                    imageDataVersion,
-                    avoidCache,
-                    animated
-            );
-            pack.setAndroidPlayStoreLink(androidPlayStoreLink);
-            pack.setIosAppStoreLink(iosAppStoreLink);
-            pack.setCustomPack(true);
-            pack.setStickers(parseStickers(packJson.optJSONArray("stickers")));
-            packs.add(pack);
         }
         return packs;
     }
 
+    @NonNull
+    private static StickerPack parsePackObject(@NonNull JSONObject packObject) throws IOException {
+        final JSONObject root = metadataRoot;
+        final StickerPack pack = root == null ? null
+                : parsePack(packObject, root.optString("android_play_store_link"), root.optString("ios_app_store_link"));
+        if (pack == null) {
+            throw new IOException("invalid pack metadata");
+        }
+        return pack;
+    }
+
+    @Nullable
+    private static StickerPack parsePack(@NonNull JSONObject packJson, @NonNull String androidPlayStoreLink, @NonNull String iosAppStoreLink) {
+        final String identifier = packJson.optString("identifier");
+        final String name = packJson.optString("name");
+        final String publisher = packJson.optString("publisher");
+        final String trayImageFile = packJson.optString("tray_image_file", DEFAULT_TRAY_FILE);
+        final String imageDataVersion = packJson.optString("image_data_version", String.valueOf(System.currentTimeMillis()));
+        final boolean avoidCache = packJson.optBoolean("avoid_cache", false);
+        final boolean animated = packJson.optBoolean("animated_sticker_pack", false);
+        if (TextUtils.isEmpty(identifier) || TextUtils.isEmpty(name) || TextUtils.isEmpty(publisher)) {
+            return null;
+        }
+        final StickerPack pack = new StickerPack(
+                identifier,
+                name,
+                publisher,
+                trayImageFile,
+                packJson.optString("publisher_email"),
+                packJson.optString("publisher_website"),
+                packJson.optString("privacy_policy_website"),
+                packJson.optString("license_agreement_website"),
+                imageDataVersion,
+                avoidCache,
+                animated
+        );
+        pack.setAndroidPlayStoreLink(androidPlayStoreLink);
+        pack.setIosAppStoreLink(iosAppStoreLink);
+        pack.setCustomPack(true);
+        pack.setStickers(parseStickers(packJson.optJSONArray("stickers")));
+        return pack;
+    }
+
     @NonNull
     private static List<Sticker> parseStickers(@Nullable JSONArray stickersArray) {
         final List<Sticker> stickers = new ArrayList<>();
@@ -326,7 +1334,7 @@ final class UserStickerPackStore {
                 continue;
             }
             final String imageFile = stickerJson.optString("image_file");
-            if (TextUtils.isEmpty(imageFile)) {
+            if (TextUtils.isEmpty(imageFile) || stickerJson.optBoolean(FIELD_MISSING, false)) {
                 continue;
             }
             final List<String> emojis = new ArrayList<>();
@@ -344,32 +1352,180 @@ final class UserStickerPackStore {
             if (size > 0) {
                 sticker.setSize(size);
             }
+            sticker.setImageInfo(stickerJson.optInt("width"), stickerJson.optInt("height"), stickerJson.optInt("frame_count"),
+                    stickerJson.optInt("duration"), stickerJson.optInt("min_frame_duration"));
+            sticker.setHash(stickerJson.optString("hash", null));
             stickers.add(sticker);
         }
         return stickers;
     }
 
     private static void writeMetadata(@NonNull Context context, @NonNull JSONObject root) throws IOException {
+        ensureRootDir(context);
+        final File tempFile = new File(getRootDir(context), METADATA_TEMP_FILE);
+        writeBytes(tempFile, root.toString().getBytes(StandardCharsets.UTF_8));
+        if (!tempFile.renameTo(getMetadataFile(context))) {
+            throw new IOException("failed to write metadata");
+        }
+    }
+
+    private static void ensureRootDir(@NonNull Context context) throws IOException {
         final File rootDir = getRootDir(context);
         if (!rootDir.exists() && !rootDir.mkdirs()) {
             throw new IOException("failed to create root folder");
         }
-        final File metadataFile = getMetadataFile(context);
-        try (FileOutputStream outputStream = new FileOutputStream(metadataFile, false)) {
-            outputStream.write(root.toString().getBytes(StandardCharsets.UTF_8));
-            outputStream.flush();
-        }
     }
 
-    private static void createDefaultTrayIcon(@NonNull File packDir) throws IOException {
+    private static void createDefaultTrayIcon(@NonNull File trayFile) throws IOException {
         final Bitmap trayBitmap = Bitmap.createBitmap(TRAY_SIZE_PX, TRAY_SIZE_PX, Bitmap.Config.ARGB_8888);
         final Canvas canvas = new Canvas(trayBitmap);
         canvas.drawColor(Color.TRANSPARENT);
-        writeBitmapAsPng(trayBitmap, new File(packDir, DEFAULT_TRAY_FILE));
+        writeBitmapAsPng(trayBitmap, trayFile);
+    }
+
+    //stickers written before the file info was stored at ingest.
+    private static void fillStickerFileInfo(@NonNull Context context, @NonNull String identifier, @NonNull JSONArray stickers) throws IOException, JSONException {
+        for (int i = 0; i < stickers.length(); i++) {
+            final JSONObject sticker = stickers.optJSONObject(i);
+            if (sticker == null || sticker.optLong("size", 0) > 0 && sticker.has("frame_count")) {
+                continue;
+            }
+            final String fileName = sticker.optString("image_file");
+            final File file = getStickerFile(context, identifier, fileName);
+            if (file.exists()) {
+                putStickerFileInfo(sticker, fileName, file.length(), StickerImageInfo.read(file));
+            }
+        }
+    }
+
+    //so neither the loader nor the validator reads the file back.
+    private static void putStickerFileInfo(@NonNull JSONObject sticker, @NonNull String fileName, long size, @Nullable StickerImageInfo info) throws JSONException {
+        sticker.put("size", size);
+        if (UserStickerBlobs.isBlobName(fileName)) {
+            sticker.put("hash", UserStickerBlobs.getHash(fileName));
+        }
+        if (info != null) {
+            sticker.put("width", info.width);
+            sticker.put("height", info.height);
+            sticker.put("frame_count", info.frameCount);
+            sticker.put("duration", info.duration);
+            sticker.put("min_frame_duration", info.minFrameDuration);
+        }
+    }
+
+    @NonNull
+    private static List<UserStickerBlobs.StagedBlob> encodeStickers(@NonNull Context context, @NonNull List<Uri> imageUris) throws IOException {
+        final File blobsDir = getBlobsDir(context);
+        if (!blobsDir.exists() && !blobsDir.mkdirs()) {
+            throw new IOException("failed to create sticker folder");
+        }
+        final List<Future<UserStickerBlobs.StagedBlob>> futures = new ArrayList<>(imageUris.size());
+        for (Uri imageUri : imageUris) {
+            futures.add(ENCODE_EXECUTOR.submit(() -> UserStickerBlobs.stage(blobsDir, StickerImageProcessor.createStickerWebp(context, imageUri))));
+        }
+        final List<UserStickerBlobs.StagedBlob> stagedBlobs = new ArrayList<>(futures.size());
+        IOException failure = null;
+        for (Future<UserStickerBlobs.StagedBlob> future : futures) {
+            if (failure != null) {
+                future.cancel(true);
+                continue;
+            }
+            try {
+                stagedBlobs.add(future.get());
+            } catch (ExecutionException e) {
+                failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException("failed to encode sticker", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new InterruptedIOException("interrupted while encoding stickers");
+            }
+        }
+        if (failure != null) {
+            //tasks that already finished staged their files, tasks that were cancelled never will.
+            for (Future<UserStickerBlobs.StagedBlob> future : futures) {
+                try {
+                    if (future.isDone() && !future.isCancelled()) {
+                        //noinspection ResultOfMethodCallIgnored
+                        future.get().file.delete();
+                    }
+                } catch (ExecutionException | InterruptedException ignored) {
+                }
+            }
+            throw failure;
+        }
+        return stagedBlobs;
+    }
+
+    @Nullable
+    private static JSONObject findSticker(@NonNull JSONArray stickers, @NonNull String fileName) {
+        for (int i = 0; i < stickers.length(); i++) {
+            final JSONObject sticker = stickers.optJSONObject(i);
+            if (sticker != null && fileName.equals(sticker.optString("image_file"))) {
+                return sticker;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static Set<String> getStickerFileNames(@NonNull JSONArray stickers) {
+        final Set<String> fileNames = new HashSet<>();
+        for (int i = 0; i < stickers.length(); i++) {
+            final JSONObject sticker = stickers.optJSONObject(i);
+            if (sticker != null) {
+                fileNames.add(sticker.optString("image_file"));
+            }
+        }
+        return fileNames;
+    }
+
+    private static void retainBlob(@NonNull String fileName) {
+        final Integer count = blobRefs.get(fileName);
+        blobRefs.put(fileName, count == null ? 1 : count + 1);
+    }
+
+    //runs under the class lock like placing a blob, so an add cannot reuse a blob that is being deleted.
+    private static void releaseBlob(@NonNull Context context, @NonNull String fileName) {
+        final Integer count = blobRefs.get(fileName);
+        if (count != null && count > 1) {
+            blobRefs.put(fileName, count - 1);
+            return;
+        }
+        blobRefs.remove(fileName);
+        //noinspection ResultOfMethodCallIgnored
+        new File(getBlobsDir(context), fileName).delete();
+    }
+
+    //runs under the class lock, a blob that did not exist before the failed commit is referenced by nothing on disk.
+    private static void removePlacedBlobs(@NonNull Context context, @NonNull List<String> placedBlobs) {
+        for (String fileName : placedBlobs) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(getBlobsDir(context), fileName).delete();
+        }
     }
 
-    private static void createTrayFromSticker(@NonNull File packDir, @NonNull byte[] stickerWebp) throws IOException {
-        final Bitmap sticker = StickerImageProcessor.decodeBitmap(new ByteArrayInputStream(stickerWebp));
+    //the folder is no longer reachable and is deleted without the class lock.
+    private static void purgeTrashedPack(@NonNull Context context, @NonNull TrashedPack trashed) {
+        synchronized (UserStickerPackStore.class) {
+            if (TRASHED_PACKS.remove(trashed.dir.getName()) == null) {
+                return;
+            }
+            final JSONArray stickers = trashed.packObject.optJSONArray("stickers");
+            if (stickers != null && metadataRoot != null) {
+                for (String fileName : getStickerFileNames(stickers)) {
+                    if (UserStickerBlobs.isBlobName(fileName)) {
+                        releaseBlob(context, fileName);
+                    }
+                }
+            }
+        }
+        deleteRecursively(trashed.dir);
+    }
+
+    private static void createTrayFromSticker(@NonNull File packDir, @NonNull File stickerFile) throws IOException {
+        final Bitmap sticker;
+        try (FileInputStream inputStream = new FileInputStream(stickerFile)) {
+            sticker = StickerImageProcessor.decodeBitmap(inputStream);
+        }
         if (sticker == null) {
             return;
         }
@@ -386,10 +1542,23 @@ final class UserStickerPackStore {
         }
     }
 
+    private static void copyFile(@NonNull File source, @NonNull File target) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(source);
+             FileOutputStream outputStream = new FileOutputStream(target, false)) {
+            final FileChannel sourceChannel = inputStream.getChannel();
+            final long size = sourceChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += sourceChannel.transferTo(position, size - position, outputStream.getChannel());
+            }
+        }
+    }
+
     private static void writeBytes(@NonNull File file, @NonNull byte[] bytes) throws IOException {
         try (FileOutputStream outputStream = new FileOutputStream(file, false)) {
             outputStream.write(bytes);
             outputStream.flush();
+            outputStream.getFD().sync();
         }
     }
 
@@ -404,8 +1573,9 @@ final class UserStickerPackStore {
         }
     }
 
+    //metadata must be loaded, suffixes handed out for a base are not probed again so this stays linear.
     @NonNull
-    private static String generateIdentifier(@NonNull String name, @NonNull JSONArray existingPacks) {
+    private static String generateIdentifier(@NonNull String name) {
         String base = name.toLowerCase(Locale.US).replaceAll("[^a-z0-9._\\- ]", "").trim().replace(" ", "_");
         if (TextUtils.isEmpty(base)) {
             base = "pack";
@@ -413,23 +1583,22 @@ final class UserStickerPackStore {
         if (base.length() > 100) {
             base = base.substring(0, 100);
         }
-        String candidate = base;
-        int suffix = 1;
-        while (containsIdentifier(existingPacks, candidate)) {
-            candidate = base + "_" + suffix;
+        if (!isIdentifierTaken(base)) {
+            return base;
+        }
+        final Integer next = NEXT_SUFFIX.get(base);
+        int suffix = next == null ? 1 : next;
+        String candidate = base + "_" + suffix;
+        while (isIdentifierTaken(candidate)) {
             suffix++;
+            candidate = base + "_" + suffix;
         }
+        NEXT_SUFFIX.put(base, suffix + 1);
         return candidate;
     }
 
-    private static boolean containsIdentifier(@NonNull JSONArray packs, @NonNull String identifier) {
-        for (int i = 0; i < packs.length(); i++) {
-            final JSONObject pack = packs.optJSONObject(i);
-            if (pack != null && identifier.equals(pack.optString("identifier"))) {
-                return true;
-            }
-        }
-        return false;
+    private static boolean isIdentifierTaken(@NonNull String identifier) {
+        return packIndex.containsKey(identifier) || RESERVED_IDENTIFIERS.contains(identifier);
     }
 
     @NonNull
@@ -442,6 +1611,16 @@ final class UserStickerPackStore {
         return new File(getRootDir(context), METADATA_FILE);
     }
 
+    @NonNull
+    private static File getJournalFile(@NonNull Context context) {
+        return new File(getRootDir(context), JOURNAL_FILE);
+    }
+
+    @NonNull
+    static File getBlobsDir(@NonNull Context context) {
+        return new File(getRootDir(context), UserStickerBlobs.BLOBS_FOLDER);
+    }
+
     @NonNull
     private static File getPackDir(@NonNull Context context, @NonNull String identifier) {
         return new File(new File(getRootDir(context), PACKS_FOLDER), identifier);
@@ -463,10 +1642,257 @@ final class UserStickerPackStore {
         file.delete();
     }
 
-    @NonNull
-    private static Set<String> getHiddenPacks(@NonNull Context context) {
-        final Set<String> stored = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
-                .getStringSet(PREF_HIDDEN_PACKS, new HashSet<>());
-        return stored == null ? new HashSet<>() : new HashSet<>(stored);
+    private static void updateHiddenPacks(@NonNull Context context, @NonNull Collection<String> identifiers, boolean hide) {
+        final List<String> changed = new ArrayList<>();
+        synchronized (HIDDEN_PACKS_LOCK) {
+            final Set<String> hidden = new HashSet<>(getHiddenPacks(context));
+            for (String identifier : identifiers) {
+                if (hide ? hidden.add(identifier) : hidden.remove(identifier)) {
+                    changed.add(identifier);
+                }
+            }
+            if (changed.isEmpty()) {
+                return;
+            }
+            //published right away so the caller sees its own change, the listener callback then finds nothing new.
+            hiddenPacks = Collections.unmodifiableSet(hidden);
+            HIDDEN_PACKS_VERSION.incrementAndGet();
+            context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .putStringSet(PREF_HIDDEN_PACKS, new HashSet<>(hidden)).apply();
+        }
+        //to the provider a hidden pack is gone and an unhidden one is new.
+        for (String identifier : changed) {
+            StickerContentProvider.notifyPackChanged(context, identifier, hide ? StickerContentProvider.CHANGE_DELETE : StickerContentProvider.CHANGE_INSERT);
+        }
+    }
+
+    private static void refreshHiddenPacks(@NonNull SharedPreferences prefs) {
+        synchronized (HIDDEN_PACKS_LOCK) {
+            final Set<String> stored = prefs.getStringSet(PREF_HIDDEN_PACKS, null);
+            final Set<String> refreshed = stored == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(stored));
+            if (!refreshed.equals(hiddenPacks)) {
+                hiddenPacks = refreshed;
+                HIDDEN_PACKS_VERSION.incrementAndGet();
+            }
+        }
+    }
+
+    //null name and publisher are left as they are.
+    static final class PackEdit {
+        @Nullable
+        String name;
+        @Nullable
+        String publisher;
+        @NonNull
+        final List<Uri> addedImages = new ArrayList<>();
+        @NonNull
+        final List<String> removedStickers = new ArrayList<>();
+    }
+
+    static final class ExportResult {
+        final int exportedCount;
+        //packs without stickers, contents.json cannot hold them.
+        final int skippedCount;
+
+        ExportResult(int exportedCount, int skippedCount) {
+            this.exportedCount = exportedCount;
+            this.skippedCount = skippedCount;
+        }
+    }
+
+    private static final class TrashedPack {
+        @NonNull
+        final String identifier;
+        @NonNull
+        final JSONObject packObject;
+        @NonNull
+        final File dir;
+        final long deletedAt = System.currentTimeMillis();
+
+        TrashedPack(@NonNull String identifier, @NonNull JSONObject packObject, @NonNull File dir) {
+            this.identifier = identifier;
+            this.packObject = packObject;
+            this.dir = dir;
+        }
+    }
+
+    //stamped with the state of the files it was built from.
+    private static final class Snapshot {
+        //files replaced underneath the store are noticed within this long, readers trust the snapshot in between.
+        private static final long FILE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+        final long generation;
+        @NonNull
+        final PackTrie packs;
+        //built on first use, a commit only touches the trie.
+        @Nullable
+        private volatile List<StickerPack> packList;
+        private final long metadataModified;
+        private final long metadataLength;
+        private final long journalModified;
+        private final long journalLength;
+        private volatile long checkedAtNanos;
+
+        Snapshot(long generation, @NonNull PackTrie packs, @NonNull Context context) {
+            this.generation = generation;
+            this.packs = packs;
+            final File metadataFile = getMetadataFile(context);
+            final File journalFile = getJournalFile(context);
+            this.metadataModified = metadataFile.lastModified();
+            this.metadataLength = metadataFile.length();
+            this.journalModified = journalFile.lastModified();
+            this.journalLength = journalFile.length();
+            this.checkedAtNanos = System.nanoTime();
+        }
+
+        @NonNull
+        List<StickerPack> getPacks() {
+            List<StickerPack> list = packList;
+            if (list == null) {
+                list = Collections.unmodifiableList(packs.toList());
+                packList = list;
+            }
+            return list;
+        }
+
+        boolean isCurrent(@NonNull Context context) {
+            final long now = System.nanoTime();
+            if (now - checkedAtNanos < FILE_CHECK_INTERVAL_NANOS) {
+                return true;
+            }
+            final File metadataFile = getMetadataFile(context);
+            final File journalFile = getJournalFile(context);
+            final boolean current = metadataFile.lastModified() == metadataModified && metadataFile.length() == metadataLength
+                    && journalFile.lastModified() == journalModified && journalFile.length() == journalLength;
+            if (current) {
+                checkedAtNanos = now;
+            }
+            return current;
+        }
+    }
+
+    //packs by identifier in a copy-on-write hash trie of two levels of 64 slots, so a change copies two slot arrays
+    //and one small leaf instead of the whole library. each pack keeps the position it was added at for the list.
+    static final class PackTrie {
+        private static final int SLOT_BITS = 6;
+        private static final int SLOT_COUNT = 1 << SLOT_BITS;
+        static final PackTrie EMPTY = new PackTrie(new Object[SLOT_COUNT], 0, 0);
+
+        private final Object[] slots;
+        final int size;
+        private final long nextPosition;
+
+        private PackTrie(@NonNull Object[] slots, int size, long nextPosition) {
+            this.slots = slots;
+            this.size = size;
+            this.nextPosition = nextPosition;
+        }
+
+        @NonNull
+        static PackTrie of(@NonNull List<StickerPack> packs) {
+            final Object[] slots = new Object[SLOT_COUNT];
+            int size = 0;
+            for (StickerPack pack : packs) {
+                final int hash = spread(pack.identifier.hashCode());
+                Object[] leaves = (Object[]) slots[hash & (SLOT_COUNT - 1)];
+                if (leaves == null) {
+                    leaves = new Object[SLOT_COUNT];
+                    slots[hash & (SLOT_COUNT - 1)] = leaves;
+                }
+                Map<String, Entry> leaf = getLeaf(leaves, hash);
+                if (leaf == null) {
+                    leaf = new HashMap<>();
+                    leaves[(hash >>> SLOT_BITS) & (SLOT_COUNT - 1)] = leaf;
+                }
+                if (!leaf.containsKey(pack.identifier)) {
+                    leaf.put(pack.identifier, new Entry(pack, size++));
+                }
+            }
+            return new PackTrie(slots, size, size);
+        }
+
+        @Nullable
+        StickerPack get(@NonNull String identifier) {
+            final int hash = spread(identifier.hashCode());
+            final Object[] leaves = (Object[]) slots[hash & (SLOT_COUNT - 1)];
+            final Map<String, Entry> leaf = leaves != null ? getLeaf(leaves, hash) : null;
+            final Entry entry = leaf != null ? leaf.get(identifier) : null;
+            return entry != null ? entry.pack : null;
+        }
+
+        //a replaced pack keeps its position, an added one goes last and a null pack is removed.
+        @NonNull
+        PackTrie with(@NonNull String identifier, @Nullable StickerPack pack) {
+            final int hash = spread(identifier.hashCode());
+            final int slot = hash & (SLOT_COUNT - 1);
+            final Object[] leaves = (Object[]) slots[slot];
+            final Map<String, Entry> leaf = leaves != null ? getLeaf(leaves, hash) : null;
+            final Entry previous = leaf != null ? leaf.get(identifier) : null;
+            if (pack == null && previous == null) {
+                return this;
+            }
+            final Map<String, Entry> newLeaf = leaf != null ? new HashMap<>(leaf) : new HashMap<>();
+            long nextPosition = this.nextPosition;
+            if (pack == null) {
+                newLeaf.remove(identifier);
+            } else {
+                newLeaf.put(identifier, new Entry(pack, previous != null ? previous.position : nextPosition++));
+            }
+            final Object[] newLeaves = leaves != null ? leaves.clone() : new Object[SLOT_COUNT];
+            newLeaves[(hash >>> SLOT_BITS) & (SLOT_COUNT - 1)] = newLeaf.isEmpty() ? null : newLeaf;
+            final Object[] newSlots = slots.clone();
+            newSlots[slot] = newLeaves;
+            final int newSize = size + (pack == null ? -1 : previous == null ? 1 : 0);
+            return new PackTrie(newSlots, newSize, nextPosition);
+        }
+
+        //in the order the packs were added.
+        @NonNull
+        List<StickerPack> toList() {
+            final List<Entry> entries = new ArrayList<>(size);
+            for (Object leaves : slots) {
+                if (leaves == null) {
+                    continue;
+                }
+                for (Object leaf : (Object[]) leaves) {
+                    if (leaf != null) {
+                        entries.addAll(castLeaf(leaf).values());
+                    }
+                }
+            }
+            Collections.sort(entries, (first, second) -> Long.compare(first.position, second.position));
+            final List<StickerPack> packs = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                packs.add(entry.pack);
+            }
+            return packs;
+        }
+
+        @Nullable
+        private static Map<String, Entry> getLeaf(@NonNull Object[] leaves, int hash) {
+            final Object leaf = leaves[(hash >>> SLOT_BITS) & (SLOT_COUNT - 1)];
+            return leaf != null ? castLeaf(leaf) : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @NonNull
+        private static Map<String, Entry> castLeaf(@NonNull Object leaf) {
+            return (Map<String, Entry>) leaf;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        private static final class Entry {
+            @NonNull
+            final StickerPack pack;
+            final long position;
+
+            Entry(@NonNull StickerPack pack, long position) {
+                this.pack = pack;
+                this.position = position;
+            }
+        }
     }
 }
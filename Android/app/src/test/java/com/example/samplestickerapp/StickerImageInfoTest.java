@@ -0,0 +1,154 @@
+package com.example.samplestickerapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class StickerImageInfoTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsLossyStill() throws IOException {
+        final byte[] vp8 = {0, 0, 0, (byte) 0x9d, 0x01, 0x2a, (byte) 0x00, 0x02, (byte) 0x00, 0x02};
+        final StickerImageInfo info = read(webp(chunk("VP8 ", vp8)));
+
+        assertNotNull(info);
+        assertEquals(512, info.width);
+        assertEquals(512, info.height);
+        assertEquals(1, info.frameCount);
+        assertEquals(0, info.duration);
+    }
+
+    @Test
+    public void readsLosslessStill() throws IOException {
+        //width - 1 in the low 14 bits, height - 1 in the next 14.
+        final int bits = (96 - 1) | (64 - 1) << 14;
+        final byte[] vp8l = {0x2f, (byte) bits, (byte) (bits >> 8), (byte) (bits >> 16), (byte) (bits >> 24)};
+        final StickerImageInfo info = read(webp(chunk("VP8L", vp8l)));
+
+        assertNotNull(info);
+        assertEquals(96, info.width);
+        assertEquals(64, info.height);
+        assertEquals(1, info.frameCount);
+    }
+
+    @Test
+    public void readsExtendedStill() throws IOException {
+        final StickerImageInfo info = read(webp(chunk("VP8X", vp8x(false, 512, 300))));
+
+        assertNotNull(info);
+        assertEquals(512, info.width);
+        assertEquals(300, info.height);
+        assertEquals(1, info.frameCount);
+    }
+
+    @Test
+    public void readsAnimationTiming() throws IOException {
+        final StickerImageInfo info = read(webp(
+                chunk("VP8X", vp8x(true, 512, 512)),
+                chunk("ANIM", new byte[6]),
+                chunk("ANMF", anmf(100, 4)),
+                //odd payloads are padded, the next header is found after the pad byte.
+                chunk("ANMF", anmf(40, 3)),
+                chunk("ANMF", anmf(250, 8))));
+
+        assertNotNull(info);
+        assertEquals(512, info.width);
+        assertEquals(512, info.height);
+        assertEquals(3, info.frameCount);
+        assertEquals(390, info.duration);
+        assertEquals(40, info.minFrameDuration);
+    }
+
+    @Test
+    public void animationWithoutFramesIsUnknown() throws IOException {
+        assertNull(read(webp(chunk("VP8X", vp8x(true, 512, 512)), chunk("ANIM", new byte[6]))));
+    }
+
+    @Test
+    public void otherFilesAreUnknown() throws IOException {
+        assertNull(read("not a webp file".getBytes(StandardCharsets.US_ASCII)));
+        assertNull(read(new byte[4]));
+        final byte[] notWebp = webp(chunk("VP8 ", new byte[10]));
+        notWebp[8] = 'A';
+        assertNull(read(notWebp));
+    }
+
+    @Test
+    public void truncatedChunkIsUnknown() throws IOException {
+        final byte[] full = webp(chunk("VP8X", vp8x(true, 512, 512)), chunk("ANMF", anmf(100, 4)));
+        final byte[] truncated = new byte[full.length - 24];
+        System.arraycopy(full, 0, truncated, 0, truncated.length);
+        assertNull(read(truncated));
+    }
+
+    private StickerImageInfo read(byte[] bytes) throws IOException {
+        final File file = folder.newFile();
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+        return StickerImageInfo.read(file);
+    }
+
+    private static byte[] webp(byte[]... chunks) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("WEBP".getBytes(StandardCharsets.US_ASCII));
+        for (byte[] chunk : chunks) {
+            body.write(chunk);
+        }
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write("RIFF".getBytes(StandardCharsets.US_ASCII));
+        writeUInt(file, body.size(), 4);
+        body.writeTo(file);
+        return file.toByteArray();
+    }
+
+    private static byte[] chunk(String fourCc, byte[] payload) throws IOException {
+        final ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        chunk.write(fourCc.getBytes(StandardCharsets.US_ASCII));
+        writeUInt(chunk, payload.length, 4);
+        chunk.write(payload);
+        if (payload.length % 2 != 0) {
+            chunk.write(0);
+        }
+        return chunk.toByteArray();
+    }
+
+    private static byte[] vp8x(boolean animated, int width, int height) {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(animated ? 0x02 : 0);
+        writeUInt(payload, 0, 3);
+        writeUInt(payload, width - 1, 3);
+        writeUInt(payload, height - 1, 3);
+        return payload.toByteArray();
+    }
+
+    private static byte[] anmf(int duration, int frameDataSize) {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        //x, y, width - 1 and height - 1, 3 bytes each.
+        payload.write(new byte[12], 0, 12);
+        writeUInt(payload, duration, 3);
+        payload.write(0);
+        for (int i = 0; i < frameDataSize; i++) {
+            payload.write(0x55);
+        }
+        return payload.toByteArray();
+    }
+
+    private static void writeUInt(ByteArrayOutputStream outputStream, long value, int size) {
+        for (int i = 0; i < size; i++) {
+            outputStream.write((int) (value >> (8 * i)) & 0xff);
+        }
+    }
+}
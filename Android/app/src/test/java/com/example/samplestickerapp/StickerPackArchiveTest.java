@@ -0,0 +1,142 @@
+package com.example.samplestickerapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StickerPackArchiveTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resolveEntryKeepsRootAndPackFolderFiles() throws IOException {
+        final File target = folder.getRoot();
+
+        assertEquals(new File(target, "contents.json"), StickerPackArchive.resolveEntry(target, "contents.json"));
+        assertEquals(new File(new File(target, "1"), "01.webp"), StickerPackArchive.resolveEntry(target, "1/01.webp"));
+    }
+
+    @Test
+    public void resolveEntrySkipsEntriesOutsideTheLayout() throws IOException {
+        final File target = folder.getRoot();
+
+        assertNull(StickerPackArchive.resolveEntry(target, "a/b/01.webp"));
+        assertNull(StickerPackArchive.resolveEntry(target, "__MACOSX/1/._01.webp"));
+        assertNull(StickerPackArchive.resolveEntry(target, ".DS_Store"));
+        assertNull(StickerPackArchive.resolveEntry(target, "1/.hidden"));
+    }
+
+    @Test
+    public void resolveEntryRejectsParentSegments() {
+        for (String name : new String[]{"../evil.webp", "1/../../evil.webp", "..", "1/.."}) {
+            try {
+                StickerPackArchive.resolveEntry(folder.getRoot(), name);
+                fail("accepted " + name);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void extractRejectsZipSlip() throws IOException {
+        final File target = new File(folder.getRoot(), "target");
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("contents.json", "{}".getBytes(StandardCharsets.UTF_8));
+        entries.put("../outside.webp", new byte[]{1});
+        try {
+            StickerPackArchive.extract(new ByteArrayInputStream(zip(entries)), target);
+            fail("extracted an entry outside the target folder");
+        } catch (IOException expected) {
+        }
+        assertFalse(new File(folder.getRoot(), "outside.webp").exists());
+    }
+
+    @Test
+    public void extractRejectsTooManyEntries() throws IOException {
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i <= 1024; i++) {
+            entries.put("1/" + i + ".webp", new byte[]{1});
+        }
+        try {
+            StickerPackArchive.extract(new ByteArrayInputStream(zip(entries)), new File(folder.getRoot(), "target"));
+            fail("extracted more than the entry limit");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void extractRejectsOversizedArchive() throws IOException {
+        //zeros deflate to almost nothing, the limit is on what the archive expands to.
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("1/01.webp", new byte[40 * 1024 * 1024]);
+        entries.put("1/02.webp", new byte[40 * 1024 * 1024]);
+        try {
+            StickerPackArchive.extract(new ByteArrayInputStream(zip(entries)), new File(folder.getRoot(), "target"));
+            fail("extracted past the size limit");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void writeThenExtractRoundTrips() throws IOException {
+        final File tray = writeFile("tray.png", new byte[]{1, 2, 3});
+        final File sticker = writeFile("01.webp", new byte[]{4, 5, 6, 7});
+        final Map<String, File> files = new LinkedHashMap<>();
+        files.put("1/tray.png", tray);
+        files.put("1/01.webp", sticker);
+        final byte[] contents = "{\"sticker_packs\":[]}".getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        StickerPackArchive.write(archive, contents, files);
+
+        final File target = new File(folder.getRoot(), "target");
+        StickerPackArchive.extract(new ByteArrayInputStream(archive.toByteArray()), target);
+
+        assertArrayEquals(contents, readFile(new File(target, StickerPackArchive.CONTENTS_FILE)));
+        assertArrayEquals(new byte[]{1, 2, 3}, readFile(StickerPackArchive.findPackFile(target, "1", "tray.png")));
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, readFile(StickerPackArchive.findPackFile(target, "1", "01.webp")));
+        assertTrue(StickerPackArchive.findPackFile(target, "2", "contents.json").exists());
+    }
+
+    private File writeFile(String name, byte[] data) throws IOException {
+        final File file = folder.newFile(name);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(data);
+        }
+        return file;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+                zipOutputStream.write(entry.getValue());
+                zipOutputStream.closeEntry();
+            }
+        }
+        return outputStream.toByteArray();
+    }
+}
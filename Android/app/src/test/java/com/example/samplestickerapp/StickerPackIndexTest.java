@@ -0,0 +1,137 @@
+package com.example.samplestickerapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class StickerPackIndexTest {
+    @Test
+    public void pageWithoutCursorStartsAtOffset() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 3), pack("b", "1", 3), pack("c", "1", 3));
+
+        assertEquals(0, index.getPageStart(null, 0));
+        assertEquals(2, index.getPageStart(null, 2));
+        assertEquals(3, index.getPageStart(null, 10));
+    }
+
+    @Test
+    public void pageStartsRightAfterTheCursorPack() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 3), pack("b", "1", 3), pack("c", "1", 3));
+
+        assertEquals(1, index.getPageStart("a", 0));
+        assertEquals(3, index.getPageStart("c", 0));
+        //a cursor pack that is gone falls back to the offset.
+        assertEquals(2, index.getPageStart("deleted", 2));
+    }
+
+    @Test
+    public void pageEndIsClampedToThePackCount() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 3), pack("b", "1", 3), pack("c", "1", 3));
+
+        assertEquals(2, index.getPageEnd(0, 2));
+        assertEquals(3, index.getPageEnd(2, 2));
+        assertEquals(3, index.getPageEnd(1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void pagesMapToContiguousStickerRows() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 2), pack("b", "1", 4), pack("c", "1", 1));
+
+        assertArrayEquals(new int[]{0, 2, 6, 7}, index.packStickerRows);
+        final int start = index.getPageStart("a", 0);
+        final int end = index.getPageEnd(start, 1);
+        assertEquals(2, index.packStickerRows[start]);
+        assertEquals(6, index.packStickerRows[end]);
+    }
+
+    @Test
+    public void hiddenPacksAreLeftOutOfThePages() {
+        final StickerPackIndex index = new StickerPackIndex(1, 1, Collections.<StickerPack>emptyList(),
+                Arrays.asList(pack("a", "1", 1), pack("b", "1", 1), pack("c", "1", 1)), Collections.singleton("b"));
+
+        assertEquals(2, index.packCount);
+        assertEquals(1, index.getPageStart("a", 0));
+        assertEquals("c", index.packIdentifiers[1]);
+        assertEquals(2, index.getPageStart("b", 2));
+    }
+
+    @Test
+    public void duplicateIdentifierServesTheStickersOfEveryPack() {
+        final StickerPackIndex index = new StickerPackIndex(1, 1, Collections.singletonList(pack("a", "1", 2)),
+                Collections.singletonList(pack("a", "2", 3)), Collections.<String>emptySet());
+
+        final StickerPackIndex.RowList rows = new StickerPackIndex.RowList();
+        index.entries.get("a").addStickerRows(rows);
+        assertEquals(5, rows.size);
+        assertEquals(0, index.entries.get("a").packRow);
+    }
+
+    @Test
+    public void changesListChangedAndNewPacksThenTombstones() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 1), pack("b", "2", 1), pack("c", "1", 1));
+        final Map<String, String> known = new LinkedHashMap<>();
+        known.put("a", "1");
+        known.put("b", "1");
+        known.put("gone", "1");
+
+        final Object[] columns = index.getChangedPackColumns(known, true);
+
+        //b changed its version, c is new and gone is no longer indexed.
+        assertArrayEquals(new String[]{"b", "c", "gone"}, (String[]) columns[0]);
+        assertArrayEquals(new int[]{0, 0, 1}, (int[]) columns[columns.length - 1]);
+        assertEquals(index.packColumns.length + 1, columns.length);
+    }
+
+    @Test
+    public void tombstoneRowsOnlyHaveTheIdentifier() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 1));
+
+        final Object[] columns = index.getChangedPackColumns(Collections.singletonMap("gone", "1"), true);
+
+        assertArrayEquals(new String[]{"a", "gone"}, (String[]) columns[0]);
+        assertArrayEquals(new String[]{"a", null}, (String[]) columns[1]);
+        assertArrayEquals(new int[]{0, 1}, (int[]) columns[columns.length - 1]);
+    }
+
+    @Test
+    public void newPacksAreLeftOutWhenNotRequested() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 1), pack("b", "1", 1));
+
+        final Object[] columns = index.getChangedPackColumns(Collections.singletonMap("a", "2"), false);
+
+        assertArrayEquals(new String[]{"a"}, (String[]) columns[0]);
+    }
+
+    @Test
+    public void nothingChangedGivesNoRows() {
+        final StickerPackIndex index = newIndex(pack("a", "1", 1), pack("b", "1", 1));
+        final Map<String, String> known = new HashMap<>();
+        known.put("a", "1");
+        known.put("b", "1");
+
+        assertEquals(0, ((String[]) index.getChangedPackColumns(known, true)[0]).length);
+    }
+
+    private static StickerPackIndex newIndex(StickerPack... packs) {
+        return new StickerPackIndex(1, 1, Collections.<StickerPack>emptyList(), Arrays.asList(packs), Collections.<String>emptySet());
+    }
+
+    private static StickerPack pack(String identifier, String imageDataVersion, int stickerCount) {
+        final StickerPack pack = new StickerPack(identifier, identifier, "publisher", "tray.png", null, null, null, null, imageDataVersion, false, false);
+        final List<Sticker> stickers = new ArrayList<>();
+        for (int i = 0; i < stickerCount; i++) {
+            stickers.add(new Sticker(identifier + "_" + i + ".webp", Collections.singletonList("\uD83D\uDE42"), null));
+        }
+        pack.setStickers(stickers);
+        return pack;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.samplestickerapp;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class StickerProviderMetricsTest {
+    @Test
+    public void bucketHoldsLatenciesBelowItsPowerOfTwo() {
+        assertEquals(0, StickerProviderMetrics.toBucket(0));
+        assertEquals(0, StickerProviderMetrics.toBucket(999));
+        assertEquals(1, StickerProviderMetrics.toBucket(TimeUnit.MICROSECONDS.toNanos(1)));
+        assertEquals(2, StickerProviderMetrics.toBucket(TimeUnit.MICROSECONDS.toNanos(2)));
+        assertEquals(2, StickerProviderMetrics.toBucket(TimeUnit.MICROSECONDS.toNanos(3)));
+        assertEquals(10, StickerProviderMetrics.toBucket(TimeUnit.MICROSECONDS.toNanos(1000)));
+        assertEquals(11, StickerProviderMetrics.toBucket(TimeUnit.MICROSECONDS.toNanos(1024)));
+    }
+
+    @Test
+    public void slowAndNegativeLatenciesStayInRange() {
+        assertEquals(StickerProviderMetrics.BUCKET_COUNT - 1, StickerProviderMetrics.toBucket(TimeUnit.HOURS.toNanos(1)));
+        assertEquals(0, StickerProviderMetrics.toBucket(-5000));
+    }
+
+    @Test
+    public void percentilesPickTheBucketTheRankFallsIn() {
+        final long[] buckets = new long[StickerProviderMetrics.BUCKET_COUNT];
+        //90 fast calls, 8 in the middle and 2 slow ones.
+        buckets[3] = 90;
+        buckets[7] = 8;
+        buckets[12] = 2;
+
+        assertEquals(8, StickerProviderMetrics.getPercentileMicros(buckets, 0.50));
+        assertEquals(128, StickerProviderMetrics.getPercentileMicros(buckets, 0.95));
+        assertEquals(4096, StickerProviderMetrics.getPercentileMicros(buckets, 0.99));
+    }
+
+    @Test
+    public void percentileOfOneCallIsThatCall() {
+        final long[] buckets = new long[StickerProviderMetrics.BUCKET_COUNT];
+        buckets[5] = 1;
+
+        assertEquals(32, StickerProviderMetrics.getPercentileMicros(buckets, 0.50));
+        assertEquals(32, StickerProviderMetrics.getPercentileMicros(buckets, 0.99));
+    }
+}
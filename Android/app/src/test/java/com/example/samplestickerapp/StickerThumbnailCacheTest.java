@@ -0,0 +1,28 @@
+package com.example.samplestickerapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StickerThumbnailCacheTest {
+    @Test
+    public void renditionSizeRoundsUpToStep() {
+        assertEquals(64, StickerThumbnailCache.getRenditionSize(1));
+        assertEquals(64, StickerThumbnailCache.getRenditionSize(64));
+        assertEquals(128, StickerThumbnailCache.getRenditionSize(65));
+        assertEquals(448, StickerThumbnailCache.getRenditionSize(448));
+    }
+
+    @Test
+    public void renditionSizeAtOrAboveStickerSizeIsOriginal() {
+        assertEquals(0, StickerThumbnailCache.getRenditionSize(449));
+        assertEquals(0, StickerThumbnailCache.getRenditionSize(512));
+        assertEquals(0, StickerThumbnailCache.getRenditionSize(2048));
+    }
+
+    @Test
+    public void renditionSizeWithoutRequestIsOriginal() {
+        assertEquals(0, StickerThumbnailCache.getRenditionSize(0));
+        assertEquals(0, StickerThumbnailCache.getRenditionSize(-1));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.samplestickerapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserStickerBlobsTest {
+    //sha-256 of "sticker".
+    private static final String STICKER_HASH = "57c4b13a4c7335e72f1669e0506e99208df1da050c125da678b23ebb55bf4c61";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stagedBlobIsNamedAfterItsContent() throws IOException {
+        final UserStickerBlobs.StagedBlob staged = UserStickerBlobs.stage(folder.getRoot(), bytes("sticker"));
+
+        assertTrue(UserStickerBlobs.isBlobName(staged.fileName));
+        assertEquals(STICKER_HASH + ".webp", staged.fileName);
+        assertEquals(STICKER_HASH, UserStickerBlobs.getHash(staged.fileName));
+        assertEquals(7, staged.size);
+        assertTrue(staged.file.getName().endsWith(UserStickerBlobs.TEMP_SUFFIX));
+    }
+
+    @Test
+    public void sameContentStagesToSameName() throws IOException {
+        final UserStickerBlobs.StagedBlob first = UserStickerBlobs.stage(folder.getRoot(), bytes("sticker"));
+        final UserStickerBlobs.StagedBlob second = UserStickerBlobs.stage(folder.getRoot(), bytes("sticker"));
+        final UserStickerBlobs.StagedBlob other = UserStickerBlobs.stage(folder.getRoot(), bytes("other"));
+
+        assertEquals(first.fileName, second.fileName);
+        assertNotEquals(first.fileName, other.fileName);
+        assertEquals(first.fileName, UserStickerBlobs.stage(first.file).fileName);
+    }
+
+    @Test
+    public void placeKeepsOneFilePerContent() throws IOException {
+        final File blobsDir = folder.newFolder("blobs");
+        final UserStickerBlobs.StagedBlob first = UserStickerBlobs.stage(blobsDir, bytes("sticker"));
+        final UserStickerBlobs.StagedBlob second = UserStickerBlobs.stage(blobsDir, bytes("sticker"));
+
+        assertTrue(UserStickerBlobs.place(blobsDir, first));
+        assertFalse(UserStickerBlobs.place(blobsDir, second));
+
+        assertTrue(new File(blobsDir, first.fileName).exists());
+        assertFalse(first.file.exists());
+        assertFalse(second.file.exists());
+        assertEquals(1, blobsDir.list().length);
+    }
+
+    @Test
+    public void isBlobNameOnlyAcceptsHashNames() {
+        assertTrue(UserStickerBlobs.isBlobName(STICKER_HASH + ".webp"));
+        assertFalse(UserStickerBlobs.isBlobName("01.webp"));
+        assertFalse(UserStickerBlobs.isBlobName(STICKER_HASH + ".png"));
+        assertFalse(UserStickerBlobs.isBlobName(STICKER_HASH.toUpperCase() + ".webp"));
+        assertFalse(UserStickerBlobs.isBlobName(STICKER_HASH.substring(1) + "g.webp"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.samplestickerapp;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class UserStickerPackJournalTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void setUp() {
+        journalFile = new File(folder.getRoot(), "contents.journal");
+    }
+
+    @Test
+    public void foldWithoutJournalKeepsSnapshot() throws Exception {
+        final JSONObject root = root(pack("a", "A"), pack("b", "B"));
+
+        assertEquals(3, UserStickerPackJournal.fold(journalFile, root, 3));
+        assertEquals("a,b", identifiers(root));
+    }
+
+    @Test
+    public void foldReplacesInPlaceAndAppendsNewPacks() throws Exception {
+        final JSONObject root = root(pack("a", "A"), pack("b", "B"));
+        UserStickerPackJournal.append(journalFile, Arrays.asList(
+                UserStickerPackJournal.putRecord(1, pack("c", "C")),
+                UserStickerPackJournal.putRecord(2, pack("a", "A2"))));
+
+        assertEquals(2, UserStickerPackJournal.fold(journalFile, root, 0));
+        assertEquals("a,b,c", identifiers(root));
+        assertEquals("A2", packs(root).getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    public void foldAppliesDeletes() throws Exception {
+        final JSONObject root = root(pack("a", "A"), pack("b", "B"));
+        UserStickerPackJournal.append(journalFile, Arrays.asList(
+                UserStickerPackJournal.putRecord(1, pack("c", "C")),
+                UserStickerPackJournal.deleteRecord(2, "a"),
+                UserStickerPackJournal.deleteRecord(3, "c")));
+
+        assertEquals(3, UserStickerPackJournal.fold(journalFile, root, 0));
+        assertEquals("b", identifiers(root));
+    }
+
+    @Test
+    public void foldRecreatedPackIsAppended() throws Exception {
+        final JSONObject root = root(pack("a", "A"), pack("b", "B"));
+        UserStickerPackJournal.append(journalFile, Arrays.asList(
+                UserStickerPackJournal.deleteRecord(1, "a"),
+                UserStickerPackJournal.putRecord(2, pack("a", "A2"))));
+
+        UserStickerPackJournal.fold(journalFile, root, 0);
+        assertEquals("b,a", identifiers(root));
+    }
+
+    @Test
+    public void foldSkipsRecordsInSnapshot() throws Exception {
+        final JSONObject root = root(pack("a", "A"));
+        UserStickerPackJournal.append(journalFile, Arrays.asList(
+                UserStickerPackJournal.putRecord(1, pack("a", "stale")),
+                UserStickerPackJournal.putRecord(2, pack("b", "B"))));
+
+        assertEquals(2, UserStickerPackJournal.fold(journalFile, root, 1));
+        assertEquals("a,b", identifiers(root));
+        assertEquals("A", packs(root).getJSONObject(0).getString("name"));
+    }
+
+    @Test
+    public void foldSkipsTornRecord() throws Exception {
+        final JSONObject root = root(pack("a", "A"));
+        UserStickerPackJournal.append(journalFile, Collections.singletonList(UserStickerPackJournal.putRecord(1, pack("b", "B"))));
+        try (FileOutputStream outputStream = new FileOutputStream(journalFile, true)) {
+            outputStream.write("{\"seq\":2,\"op\":\"put\",\"pack\":{\"identifier\":\"c\"".getBytes(StandardCharsets.UTF_8));
+        }
+        //the next append starts on a fresh line, so only the torn record is lost.
+        UserStickerPackJournal.append(journalFile, Collections.singletonList(UserStickerPackJournal.putRecord(3, pack("d", "D"))));
+
+        assertEquals(3, UserStickerPackJournal.fold(journalFile, root, 0));
+        assertEquals("a,b,d", identifiers(root));
+    }
+
+    @Test
+    public void trimDropsCompactedRecords() throws Exception {
+        UserStickerPackJournal.append(journalFile, Arrays.asList(
+                UserStickerPackJournal.putRecord(1, pack("b", "B")),
+                UserStickerPackJournal.putRecord(2, pack("c", "C"))));
+        UserStickerPackJournal.trim(journalFile, 1);
+
+        final JSONObject root = root(pack("a", "A"));
+        assertEquals(2, UserStickerPackJournal.fold(journalFile, root, 0));
+        assertEquals("a,c", identifiers(root));
+    }
+
+    private static JSONObject pack(String identifier, String name) throws JSONException {
+        final JSONObject pack = new JSONObject();
+        pack.put("identifier", identifier);
+        pack.put("name", name);
+        return pack;
+    }
+
+    private static JSONObject root(JSONObject... packs) throws JSONException {
+        final JSONObject root = new JSONObject();
+        root.put("sticker_packs", new JSONArray(Arrays.asList(packs)));
+        return root;
+    }
+
+    private static JSONArray packs(JSONObject root) throws JSONException {
+        return root.getJSONArray("sticker_packs");
+    }
+
+    private static String identifiers(JSONObject root) throws JSONException {
+        final StringBuilder builder = new StringBuilder();
+        final JSONArray packs = packs(root);
+        for (int i = 0; i < packs.length(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(packs.getJSONObject(i).getString("identifier"));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.samplestickerapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserStickerPackScannerTest {
+    private static final String[] ENTRIES = {"a", "c", "e"};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void walkStartsAtTheFirstEntryWithoutCheckpoint() {
+        assertEquals(0, UserStickerPackScanner.getResumeIndex(ENTRIES, null));
+    }
+
+    @Test
+    public void walkResumesAfterTheCheckpoint() {
+        assertEquals(1, UserStickerPackScanner.getResumeIndex(ENTRIES, "a"));
+        assertEquals(3, UserStickerPackScanner.getResumeIndex(ENTRIES, "e"));
+    }
+
+    @Test
+    public void walkResumesAfterACheckpointThatWasDeleted() {
+        //"b" and "d" were walked and are gone now, the entries after them are not skipped.
+        assertEquals(1, UserStickerPackScanner.getResumeIndex(ENTRIES, "b"));
+        assertEquals(2, UserStickerPackScanner.getResumeIndex(ENTRIES, "d"));
+        assertEquals(3, UserStickerPackScanner.getResumeIndex(ENTRIES, "f"));
+        assertEquals(0, UserStickerPackScanner.getResumeIndex(new String[0], "a"));
+    }
+
+    @Test
+    public void interruptedScanResumesSoon() {
+        assertEquals(UserStickerPackScanner.INITIAL_DELAY_MS, UserStickerPackScanner.getInitialDelay(true, 0));
+        assertEquals(UserStickerPackScanner.INITIAL_DELAY_MS, UserStickerPackScanner.getInitialDelay(false, UserStickerPackScanner.SCAN_INTERVAL_MS));
+    }
+
+    @Test
+    public void finishedScanWaitsOutItsInterval() {
+        final long sinceLastScan = TimeUnit.HOURS.toMillis(6);
+        assertEquals(UserStickerPackScanner.SCAN_INTERVAL_MS - sinceLastScan, UserStickerPackScanner.getInitialDelay(false, sinceLastScan));
+    }
+
+    @Test
+    public void entriesInsideTheGracePeriodAreKept() throws IOException {
+        final File staging = folder.newFolder("import");
+        final long now = System.currentTimeMillis();
+        final long cutoff = now - TimeUnit.HOURS.toMillis(1);
+
+        assertTrue(staging.setLastModified(now - TimeUnit.MINUTES.toMillis(10)));
+        assertFalse(UserStickerPackScanner.isPastGracePeriod(staging, cutoff));
+
+        assertTrue(staging.setLastModified(now - TimeUnit.HOURS.toMillis(2)));
+        assertTrue(UserStickerPackScanner.isPastGracePeriod(staging, cutoff));
+    }
+}